@@ -0,0 +1,315 @@
+package model;
+
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the number of connections a {@link Database} hands out at once.
+ * Callers over the limit wait in arrival order and fail fast with a
+ * {@link SQLTransientConnectionException} once the maximum wait passes.
+ * The limit can optionally adapt to observed latency: it grows by one while
+ * latency stays near the best seen and is cut multiplicatively once latency
+ * climbs past the tolerance. Latency is the execution time of statements run
+ * on admitted connections, not how long the connections are held, so
+ * connections kept open to stream results do not read as slow queries.
+ */
+public class AdmissionLimiter
+{
+	private static final int BASELINE_WINDOW = 100;
+	private static final int MAX_SHAPES = 1000;
+	private static final double DECREASE_FACTOR = 0.9;
+	
+	private final ReentrantLock lock;
+	private final Condition available;
+	private int limit;
+	private int inFlight;
+	private Duration maxWait;
+	
+	private boolean adaptive;
+	private int minLimit;
+	private int maxLimit;
+	private double tolerance;
+	private final Map<String, Baseline> baselines;
+	private int sinceDecrease;
+	private final ThreadLocal<AtomicInteger> held;
+	
+	private long admitted;
+	private long rejected;
+	private long totalQueueNanos;
+	private long maxQueueNanos;
+	
+	public AdmissionLimiter(int limit)
+	{
+		if(limit < 1)
+		{
+			throw new IllegalArgumentException("Limit must be at least 1");
+		}
+		
+		this.limit = limit;
+		lock = new ReentrantLock(true);
+		available = lock.newCondition();
+		maxWait = Duration.ofSeconds(30);
+		baselines = new LinkedHashMap<String, Baseline>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Baseline> eldest)
+			{
+				return size() > MAX_SHAPES;
+			}
+		};
+		held = ThreadLocal.withInitial(AtomicInteger::new);
+	}
+	
+	public AdmissionLimiter setMaxWait(Duration maxWait)
+	{
+		this.maxWait = maxWait.isNegative() ? Duration.ZERO : maxWait;
+		return this;
+	}
+	
+	/**
+	 * Lets the limit move between the given bounds, backing off once latency
+	 * exceeds the best observed latency by the tolerance factor.
+	 */
+	public AdmissionLimiter setAdaptive(int minLimit, int maxLimit, double tolerance)
+	{
+		if(minLimit < 1 || maxLimit < minLimit || tolerance < 1)
+		{
+			throw new IllegalArgumentException("Invalid adaptive limit bounds");
+		}
+		
+		lock.lock();
+		try
+		{
+			adaptive = true;
+			this.minLimit = minLimit;
+			this.maxLimit = maxLimit;
+			this.tolerance = tolerance;
+			limit = Math.max(minLimit, Math.min(maxLimit, limit));
+			available.signalAll();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Waits for a free slot, given back by closing the returned permit. A
+	 * thread that already holds a slot, such as one loading lazy columns while
+	 * streaming, gets a permit sharing it instead of waiting on itself.
+	 */
+	public Permit acquire() throws SQLTransientConnectionException
+	{
+		var holder = held.get();
+		if(holder.get() > 0)
+		{
+			return new Permit(null);
+		}
+		
+		var start = System.nanoTime();
+		lock.lock();
+		try
+		{
+			var remaining = maxWait.toNanos();
+			var mustQueue = lock.hasWaiters(available);
+			while(mustQueue || inFlight >= limit)
+			{
+				if(remaining <= 0)
+				{
+					rejected++;
+					throw new SQLTransientConnectionException(String.format("Admission limit of %d reached after waiting %d ms", limit, maxWait.toMillis()));
+				}
+				
+				remaining = available.awaitNanos(remaining);
+				mustQueue = false;
+			}
+			
+			inFlight++;
+			admitted++;
+			var now = System.nanoTime();
+			totalQueueNanos += now - start;
+			maxQueueNanos = Math.max(maxQueueNanos, now - start);
+			holder.incrementAndGet();
+			return new Permit(holder);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new SQLTransientConnectionException("Interrupted while waiting for admission", e);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+	
+	private void release()
+	{
+		lock.lock();
+		try
+		{
+			inFlight--;
+			available.signalAll();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Records how long one statement took to execute on an admitted
+	 * connection, adjusting the limit if it is adaptive. Latency is compared
+	 * with the best recently seen for the same SQL, so slow reports are not
+	 * judged against fast key lookups.
+	 */
+	public void recordLatency(String sql, long nanos)
+	{
+		lock.lock();
+		try
+		{
+			if(adaptive)
+			{
+				adapt(sql == null ? "" : sql, nanos, inFlight >= limit);
+				available.signalAll();
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Grows the limit by one while saturated and latency is normal, and cuts
+	 * it at most once per limit's worth of samples, so one burst of slow
+	 * statements counts as a single signal.
+	 */
+	private void adapt(String shape, long latency, boolean saturated)
+	{
+		var slow = baselines.computeIfAbsent(shape, k -> new Baseline()).isSlow(latency, tolerance);
+		sinceDecrease++;
+		
+		if(slow)
+		{
+			if(sinceDecrease >= limit)
+			{
+				limit = Math.max(minLimit, (int) (limit * DECREASE_FACTOR));
+				sinceDecrease = 0;
+			}
+		}
+		else if(saturated)
+		{
+			limit = Math.min(maxLimit, limit + 1);
+		}
+	}
+	
+	private <T> T locked(Supplier<T> supplier)
+	{
+		lock.lock();
+		try
+		{
+			return supplier.get();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+	
+	public int getLimit()
+	{
+		return locked(() -> limit);
+	}
+	
+	public int getInFlight()
+	{
+		return locked(() -> inFlight);
+	}
+	
+	public int getQueued()
+	{
+		return locked(() -> lock.getWaitQueueLength(available));
+	}
+	
+	public long getAdmitted()
+	{
+		return locked(() -> admitted);
+	}
+	
+	public long getRejected()
+	{
+		return locked(() -> rejected);
+	}
+	
+	public Duration getAverageQueueTime()
+	{
+		return locked(() -> Duration.ofNanos(admitted == 0 ? 0 : totalQueueNanos / admitted));
+	}
+	
+	public Duration getMaxQueueTime()
+	{
+		return locked(() -> Duration.ofNanos(maxQueueNanos));
+	}
+	
+	/**
+	 * A slot granted by {@link AdmissionLimiter#acquire()}; closing it gives
+	 * the slot back. Closing a permit more than once has no effect.
+	 */
+	public class Permit implements AutoCloseable
+	{
+		private final AtomicInteger holder;
+		private final AtomicBoolean closed;
+		
+		private Permit(AtomicInteger holder)
+		{
+			this.holder = holder;
+			closed = new AtomicBoolean();
+		}
+		
+		@Override
+		public void close()
+		{
+			if(closed.compareAndSet(false, true) && holder != null)
+			{
+				holder.decrementAndGet();
+				release();
+			}
+		}
+	}
+	
+	/**
+	 * The best latency of one statement shape over the current and previous
+	 * window of samples, so it can recover when the database gets slower for
+	 * good.
+	 */
+	private static class Baseline
+	{
+		private long baselineNanos = Long.MAX_VALUE;
+		private long windowMinNanos = Long.MAX_VALUE;
+		private int windowSamples;
+		
+		public boolean isSlow(long latency, double tolerance)
+		{
+			windowMinNanos = Math.min(windowMinNanos, latency);
+			if(++windowSamples >= BASELINE_WINDOW)
+			{
+				baselineNanos = windowMinNanos;
+				windowMinNanos = Long.MAX_VALUE;
+				windowSamples = 0;
+			}
+			baselineNanos = Math.min(baselineNanos, latency);
+			
+			return latency > baselineNanos * tolerance;
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package model;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces primary key lookups on one table from any number of threads.
+ * Keys requested within a short window, or until the batch is full, are
+ * fetched together with a single query per shard; concurrent requests for
+ * the same key share one fetch. Lookups always go to the database, bypassing
+ * any in-memory replica of the table.
+ */
+public class BatchLoader
+{
+	private final Database database;
+	private final Table table;
+	private final Column<?>[] primaryKeys;
+	private final Map<Key, CompletableFuture<Optional<Table>>> inFlight;
+	private Map<Key, CompletableFuture<Optional<Table>>> pending;
+	private long windowNanos;
+	private int maxBatchSize;
+	
+	public BatchLoader(Database database, Table table)
+	{
+		this.database = Objects.requireNonNull(database);
+		this.table = Objects.requireNonNull(table);
+		primaryKeys = table.getPrimaryKeys();
+		if(primaryKeys.length == 0)
+		{
+			throw new IllegalStateException(String.format("Table %s has no primary key", table.getName()));
+		}
+		
+		inFlight = new HashMap<Key, CompletableFuture<Optional<Table>>>();
+		pending = new LinkedHashMap<Key, CompletableFuture<Optional<Table>>>();
+		windowNanos = TimeUnit.MILLISECONDS.toNanos(2);
+		maxBatchSize = 500;
+	}
+	
+	public BatchLoader setWindow(Duration window)
+	{
+		windowNanos = window.toNanos();
+		return this;
+	}
+	
+	public BatchLoader setMaxBatchSize(int maxBatchSize)
+	{
+		if(maxBatchSize < 1)
+		{
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+		
+		this.maxBatchSize = maxBatchSize;
+		return this;
+	}
+	
+	/**
+	 * Requests the row with the given primary key values, in the order of the
+	 * table's primary key columns.
+	 */
+	public CompletableFuture<Optional<Table>> load(Object... primaryKey)
+	{
+		if(primaryKey.length != primaryKeys.length)
+		{
+			throw new IllegalArgumentException(String.format("Expected %d key values but got %d", primaryKeys.length, primaryKey.length));
+		}
+		
+		var key = new Key(primaryKey.clone());
+		Map<Key, CompletableFuture<Optional<Table>>> full = null;
+		CompletableFuture<Optional<Table>> future;
+		synchronized(this)
+		{
+			future = inFlight.get(key);
+			if(future != null)
+			{
+				return future;
+			}
+			
+			future = new CompletableFuture<Optional<Table>>();
+			inFlight.put(key, future);
+			pending.put(key, future);
+			
+			if(pending.size() >= maxBatchSize)
+			{
+				full = pending;
+				pending = new LinkedHashMap<Key, CompletableFuture<Optional<Table>>>();
+			}
+			else if(pending.size() == 1)
+			{
+				var batch = pending;
+				Workers.SCHEDULER.schedule(QueryDetector.propagate(() -> dispatch(batch)), windowNanos, TimeUnit.NANOSECONDS);
+			}
+		}
+		
+		if(full != null)
+		{
+			var batch = full;
+			Workers.POOL.execute(QueryDetector.propagate(() -> fetch(batch)));
+		}
+		
+		return future;
+	}
+	
+	public Optional<Table> get(Object... primaryKey) throws SQLException
+	{
+		try
+		{
+			return load(primaryKey).join();
+		}
+		catch(CompletionException e)
+		{
+			if(e.getCause() instanceof SQLException)
+			{
+				throw (SQLException) e.getCause();
+			}
+			throw e;
+		}
+	}
+	
+	private void dispatch(Map<Key, CompletableFuture<Optional<Table>>> batch)
+	{
+		synchronized(this)
+		{
+			if(pending != batch)
+			{
+				return;
+			}
+			pending = new LinkedHashMap<Key, CompletableFuture<Optional<Table>>>();
+		}
+		
+		Workers.POOL.execute(QueryDetector.propagate(() -> fetch(batch)));
+	}
+	
+	private void fetch(Map<Key, CompletableFuture<Optional<Table>>> batch)
+	{
+		try
+		{
+			var byShard = new LinkedHashMap<Database, List<Key>>();
+			for(var key : batch.keySet())
+			{
+				byShard.computeIfAbsent(database.route(key.getValues()), shard -> new ArrayList<Key>()).add(key);
+			}
+			
+			var found = new HashMap<Key, Table>();
+			for(var shard : byShard.entrySet())
+			{
+				var query = table.query(shard.getKey()).remote()
+								 .filter(FilterExpression.primaryKeyIn(primaryKeys, shard.getValue()));
+				for(var row : query.all())
+				{
+					found.put(Key.of(row.getPrimaryKeys()), row);
+				}
+			}
+			
+			for(var entry : batch.entrySet())
+			{
+				complete(entry.getKey());
+				entry.getValue().complete(Optional.ofNullable(found.get(entry.getKey())));
+			}
+		}
+		catch(SQLException | RuntimeException e)
+		{
+			for(var entry : batch.entrySet())
+			{
+				complete(entry.getKey());
+				entry.getValue().completeExceptionally(e);
+			}
+		}
+	}
+	
+	private synchronized void complete(Key key)
+	{
+		inFlight.remove(key);
+	}
+}
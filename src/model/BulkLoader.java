@@ -0,0 +1,589 @@
+package model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class BulkLoader
+{
+	private static final List<Object[]> END = new ArrayList<Object[]>();
+	
+	private final Table table;
+	private Column<?>[] columns;
+	private int batchSize;
+	private int parallelism;
+	private boolean header;
+	private Consumer<Progress> progressListener;
+	
+	public BulkLoader(Table table)
+	{
+		this.table = Objects.requireNonNull(table);
+		this.columns = Arrays.stream(table.getColumns())
+							 .filter(c -> !c.isAutoIncrement())
+							 .toArray(Column[]::new);
+		this.batchSize = 1000;
+		this.parallelism = 1;
+	}
+	
+	/**
+	 * Sets the columns, in order, that each loaded row provides values for.
+	 * Defaults to every column of the table that is not auto-incremented.
+	 */
+	public BulkLoader setColumns(Column<?>... columns)
+	{
+		if(columns.length == 0)
+		{
+			throw new IllegalArgumentException("Must load at least one column");
+		}
+		
+		this.columns = columns;
+		return this;
+	}
+	
+	public BulkLoader setBatchSize(int batchSize)
+	{
+		if(batchSize < 1)
+		{
+			throw new IllegalArgumentException("Batch size must be positive");
+		}
+		
+		this.batchSize = batchSize;
+		return this;
+	}
+	
+	public BulkLoader setParallelism(int parallelism)
+	{
+		if(parallelism < 1)
+		{
+			throw new IllegalArgumentException("Parallelism must be positive");
+		}
+		
+		this.parallelism = parallelism;
+		return this;
+	}
+	
+	public BulkLoader hasHeader(boolean b)
+	{
+		this.header = b;
+		return this;
+	}
+	
+	/**
+	 * The listener is called after every committed batch, from the loading
+	 * threads.
+	 */
+	public BulkLoader setProgressListener(Consumer<Progress> listener)
+	{
+		this.progressListener = listener;
+		return this;
+	}
+	
+	/**
+	 * Loads a UTF-8 CSV file whose fields are in the order of the loaded
+	 * columns; a header line, if any, is skipped rather than matched to column
+	 * names. An unquoted empty field loads as NULL and a quoted one as the
+	 * empty string. Where the database can read the file itself (COPY on
+	 * PostgreSQL, LOAD DATA LOCAL on MySQL, CSVREAD on embedded H2) it does
+	 * so; MySQL loads empty fields with its own LOAD DATA rules instead,
+	 * as empty strings or zero rather than NULL.
+	 */
+	public long load(Database db, Path csv) throws SQLException, IOException
+	{
+		table.createTable(db);
+		
+		if(db.getShards().size() == 1)
+		{
+			var start = System.nanoTime();
+			var loaded = loadNative(db, csv);
+			if(loaded >= 0)
+			{
+				report(loaded, start);
+				return loaded;
+			}
+		}
+		
+		try(var reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8))
+		{
+			var records = new CsvIterator(reader);
+			if(header && records.hasNext())
+			{
+				records.next();
+			}
+			
+			return load(db, StreamSupport.stream(Spliterators.spliteratorUnknownSize(records, Spliterator.ORDERED | Spliterator.NONNULL), false));
+		}
+		catch(UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+	}
+	
+	public long load(Database db, Stream<Object[]> rows) throws SQLException
+	{
+		table.createTable(db);
+		
+		var start = System.nanoTime();
+		var loaded = new AtomicLong();
+		var failure = new AtomicReference<Throwable>();
+		var queue = new ArrayBlockingQueue<List<Object[]>>(parallelism * 2);
+		var workers = new ArrayList<CompletableFuture<Void>>();
+		
+		for(var i = 0; i < parallelism; i++)
+		{
+			workers.add(CompletableFuture.runAsync(() -> {
+				try
+				{
+					drain(db, queue, loaded, start);
+				}
+				catch(SQLException | RuntimeException e)
+				{
+					failure.compareAndSet(null, e);
+					queue.clear();
+					throw new CompletionException(e);
+				}
+			}, Workers.POOL));
+		}
+		
+		try
+		{
+			var batch = new ArrayList<Object[]>(batchSize);
+			var rowIt = rows.iterator();
+			while(rowIt.hasNext() && failure.get() == null)
+			{
+				var row = rowIt.next();
+				if(row.length != columns.length)
+				{
+					throw new IllegalArgumentException(String.format("Expected %d values but got %d", columns.length, row.length));
+				}
+				
+				batch.add(row);
+				if(batch.size() == batchSize)
+				{
+					offer(queue, batch, workers);
+					batch = new ArrayList<Object[]>(batchSize);
+				}
+			}
+			if(!batch.isEmpty())
+			{
+				offer(queue, batch, workers);
+			}
+		}
+		finally
+		{
+			for(var i = 0; i < parallelism; i++)
+			{
+				offer(queue, END, workers);
+			}
+		}
+		
+		for(var worker : workers)
+		{
+			try
+			{
+				worker.join();
+			}
+			catch(CompletionException e)
+			{
+				if(e.getCause() instanceof SQLException)
+				{
+					throw (SQLException) e.getCause();
+				}
+				throw (RuntimeException) e.getCause();
+			}
+		}
+		
+		return loaded.get();
+	}
+	
+	private void offer(BlockingQueue<List<Object[]>> queue, List<Object[]> batch, List<CompletableFuture<Void>> workers) throws SQLException
+	{
+		try
+		{
+			while(!queue.offer(batch, 100, TimeUnit.MILLISECONDS))
+			{
+				if(workers.stream().allMatch(CompletableFuture::isDone))
+				{
+					return;
+				}
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while loading rows", e);
+		}
+	}
+	
+	private void drain(Database db, BlockingQueue<List<Object[]>> queue, AtomicLong loaded, long start) throws SQLException
+	{
+		var connections = new HashMap<Database, Connection>();
+		var statements = new HashMap<Connection, Map<Integer, PreparedStatement>>();
+		var keyIndexes = primaryKeyIndexes();
+		
+		try
+		{
+			while(true)
+			{
+				List<Object[]> batch;
+				try
+				{
+					batch = queue.take();
+				}
+				catch(InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new SQLException("Interrupted while loading rows", e);
+				}
+				
+				if(batch == END)
+				{
+					return;
+				}
+				
+				var byShard = new LinkedHashMap<Database, List<Object[]>>();
+				for(var row : batch)
+				{
+					var shard = db;
+					if(db.getShards().size() > 1)
+					{
+						shard = db.route(Arrays.stream(keyIndexes).mapToObj(i -> row[i]).toArray());
+					}
+					byShard.computeIfAbsent(shard, k -> new ArrayList<Object[]>()).add(row);
+				}
+				
+				for(var entry : byShard.entrySet())
+				{
+					var connection = connections.get(entry.getKey());
+					if(connection == null)
+					{
+						connection = entry.getKey().getConnection();
+						connection.setAutoCommit(false);
+						connections.put(entry.getKey(), connection);
+					}
+					
+					insert(connection, entry.getKey().getDialect(), statements.computeIfAbsent(connection, k -> new HashMap<Integer, PreparedStatement>()), entry.getValue());
+					connection.commit();
+				}
+				
+				report(loaded.addAndGet(batch.size()), start);
+			}
+		}
+		catch(SQLException e)
+		{
+			for(var connection : connections.values())
+			{
+				try
+				{
+					connection.rollback();
+				}
+				catch(SQLException ignored)
+				{
+				}
+			}
+			throw e;
+		}
+		finally
+		{
+			for(var connection : connections.values())
+			{
+				try
+				{
+					connection.close();
+				}
+				catch(SQLException ignored)
+				{
+				}
+			}
+		}
+	}
+	
+	private void insert(Connection connection, Dialect dialect, Map<Integer, PreparedStatement> statements, List<Object[]> rows) throws SQLException
+	{
+		var rowsPerStatement = Math.max(1, Math.min(batchSize, dialect.getMaxParameters() / columns.length));
+		
+		for(var offset = 0; offset < rows.size(); offset += rowsPerStatement)
+		{
+			var count = Math.min(rowsPerStatement, rows.size() - offset);
+			var statement = statements.get(count);
+			if(statement == null)
+			{
+				statement = connection.prepareStatement(generateInsertString(count));
+				statements.put(count, statement);
+			}
+			
+			var index = 1;
+			for(var row : rows.subList(offset, offset + count))
+			{
+				for(var i = 0; i < row.length; i++)
+				{
+					columns[i].bind(statement, index++, row[i]);
+				}
+			}
+			
+			statement.executeUpdate();
+		}
+	}
+	
+	private String generateInsertString(int rowCount)
+	{
+		var values = String.format("(%s)", String.join(", ", Arrays.stream(columns).map(c -> "?").toArray(String[]::new)));
+		return String.format("INSERT INTO %s (%s)\n"
+				+ "VALUES %s", table.getName(), columnNames(),
+				String.join(",\n", Collections.nCopies(rowCount, values)));
+	}
+	
+	private long loadNative(Database db, Path csv) throws SQLException, IOException
+	{
+		var path = csv.toAbsolutePath().toString();
+		
+		try(var connection = db.getConnection())
+		{
+			switch(db.getDialect())
+			{
+				case MYSQL:
+					var load = String.format("LOAD DATA LOCAL INFILE '%s'\n"
+							+ "INTO TABLE %s\n"
+							+ "CHARACTER SET utf8mb4\n"
+							+ "FIELDS TERMINATED BY ',' OPTIONALLY ENCLOSED BY '\"'\n"
+							+ "LINES TERMINATED BY '\\n'\n"
+							+ "%s(%s)", path.replace("\\", "\\\\").replace("'", "\\'"), table.getName(),
+							header ? "IGNORE 1 LINES\n" : "", columnNames());
+					return connection.createStatement().executeUpdate(load);
+				case H2:
+					if(db.getURL().startsWith("jdbc:h2:tcp:") || db.getURL().startsWith("jdbc:h2:ssl:"))
+					{
+						return -1;
+					}
+					
+					var select = String.format("INSERT INTO %s (%s)\n"
+							+ "SELECT * FROM CSVREAD('%s', '%s', 'charset=UTF-8 preserveWhitespace=true')%s", table.getName(), columnNames(),
+							path.replace("'", "''"), String.join(",", Arrays.stream(columns).map(Column::getName).toArray(String[]::new)),
+							header ? "\nOFFSET 1 ROWS" : "");
+					return connection.createStatement().executeUpdate(select);
+				case POSTGRESQL:
+					var copy = String.format("COPY %s (%s) FROM STDIN WITH (FORMAT csv%s)", table.getName(), columnNames(), 
+							header ? ", HEADER true" : "");
+					try(var reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8))
+					{
+						return copyIn(connection, copy, reader);
+					}
+				default:
+					return -1;
+			}
+		}
+	}
+	
+	private static long copyIn(Connection connection, String sql, Reader reader) throws SQLException
+	{
+		try
+		{
+			var pgConnectionClass = Class.forName("org.postgresql.PGConnection");
+			var pgConnection = connection.unwrap(pgConnectionClass);
+			var copyManager = pgConnectionClass.getMethod("getCopyAPI").invoke(pgConnection);
+			return (Long) copyManager.getClass().getMethod("copyIn", String.class, Reader.class).invoke(copyManager, sql, reader);
+		}
+		catch(ReflectiveOperationException e)
+		{
+			if(e.getCause() instanceof SQLException)
+			{
+				throw (SQLException) e.getCause();
+			}
+			return -1;
+		}
+	}
+	
+	private String columnNames()
+	{
+		return String.join(", ", Arrays.stream(columns).map(Column::getName).toArray(String[]::new));
+	}
+	
+	private int[] primaryKeyIndexes()
+	{
+		var primaryKeys = table.getPrimaryKeys();
+		var indexes = new int[primaryKeys.length];
+		for(var i = 0; i < primaryKeys.length; i++)
+		{
+			indexes[i] = Arrays.asList(columns).indexOf(primaryKeys[i]);
+			if(indexes[i] < 0)
+			{
+				throw new IllegalStateException("Sharded loads must provide every primary key column");
+			}
+		}
+		
+		return indexes;
+	}
+	
+	private void report(long rows, long start)
+	{
+		if(progressListener != null)
+		{
+			progressListener.accept(new Progress(rows, Duration.ofNanos(System.nanoTime() - start)));
+		}
+	}
+	
+	public static class Progress
+	{
+		private final long rows;
+		private final Duration elapsed;
+		
+		public Progress(long rows, Duration elapsed)
+		{
+			this.rows = rows;
+			this.elapsed = elapsed;
+		}
+		
+		public long getRows()
+		{
+			return rows;
+		}
+		
+		public Duration getElapsed()
+		{
+			return elapsed;
+		}
+		
+		public double getRowsPerSecond()
+		{
+			var seconds = elapsed.toNanos() / 1e9;
+			return seconds > 0 ? rows / seconds : 0;
+		}
+	}
+	
+	private static class CsvIterator implements Iterator<Object[]>
+	{
+		private final BufferedReader reader;
+		private Object[] next;
+		private boolean done;
+		
+		public CsvIterator(BufferedReader reader)
+		{
+			this.reader = reader;
+		}
+		
+		@Override
+		public boolean hasNext()
+		{
+			if(next == null && !done)
+			{
+				try
+				{
+					next = readRecord();
+				}
+				catch(IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+				done = next == null;
+			}
+			
+			return next != null;
+		}
+		
+		@Override
+		public Object[] next()
+		{
+			if(!hasNext())
+			{
+				throw new NoSuchElementException();
+			}
+			
+			var record = next;
+			next = null;
+			return record;
+		}
+		
+		private Object[] readRecord() throws IOException
+		{
+			var fields = new ArrayList<Object>();
+			var field = new StringBuilder();
+			var quoted = false;
+			var wasQuoted = false;
+			var c = reader.read();
+			
+			if(c == -1)
+			{
+				return null;
+			}
+			
+			while(true)
+			{
+				if(quoted)
+				{
+					if(c == -1)
+					{
+						throw new IOException("Unterminated quoted field");
+					}
+					if(c == '"')
+					{
+						reader.mark(1);
+						if(reader.read() == '"')
+						{
+							field.append('"');
+						}
+						else
+						{
+							reader.reset();
+							quoted = false;
+						}
+					}
+					else
+					{
+						field.append((char) c);
+					}
+				}
+				else if(c == '"' && field.length() == 0)
+				{
+					quoted = true;
+					wasQuoted = true;
+				}
+				else if(c == ',' || c == '\n' || c == -1)
+				{
+					fields.add(field.length() == 0 && !wasQuoted ? null : field.toString());
+					field.setLength(0);
+					wasQuoted = false;
+					
+					if(c != ',')
+					{
+						return fields.toArray();
+					}
+				}
+				else if(c != '\r')
+				{
+					field.append((char) c);
+				}
+				
+				c = reader.read();
+			}
+		}
+	}
+}
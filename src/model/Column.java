@@ -1,8 +1,12 @@
 package model;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Types;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 public class Column <T>
 {
@@ -11,6 +15,11 @@ public class Column <T>
 	public static final int MEDIUMBLOB = -12;
 	public static final int LONGBLOB = -13;
 	
+	private static final Set<Integer> LARGE_OBJECT_TYPES = Set.of(Types.BLOB, Types.CLOB, Types.NCLOB,
+			Types.LONGVARBINARY, Types.LONGVARCHAR, Types.LONGNVARCHAR, TEXT, TINYBLOB, MEDIUMBLOB, LONGBLOB);
+	private static final Set<Integer> CHARACTER_TYPES = Set.of(Types.CHAR, Types.VARCHAR, Types.NCHAR, Types.NVARCHAR,
+			Types.CLOB, Types.NCLOB, Types.LONGVARCHAR, Types.LONGNVARCHAR, TEXT);
+	
 	private static final Map<Integer, String> TYPE_TO_STRING = Map.ofEntries
 	(
 			Map.entry(Types.ARRAY, "ARRAY"),
@@ -65,6 +74,10 @@ public class Column <T>
 	private final boolean nullable;
 	private final boolean autoIncrement;
 	private final ForeignKey<T> foreignKey;
+	private final boolean lazy;
+	private final boolean indexed;
+	private final boolean unique;
+	private TypeCodec<T> codec;
 	
 	private T value;
 	
@@ -82,6 +95,21 @@ public class Column <T>
 	public Column(String name, int type, 
 		int length, boolean primaryKey, boolean nullable, boolean autoIncrement,
 		ForeignKey<T> foreign)
+	{
+		this(name, type, length, primaryKey, nullable, autoIncrement, foreign, false);
+	}
+	
+	public Column(String name, int type, 
+		int length, boolean primaryKey, boolean nullable, boolean autoIncrement,
+		ForeignKey<T> foreign, boolean lazy)
+	{
+		this(name, type, length, primaryKey, nullable, autoIncrement, foreign, lazy, false, false);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public Column(String name, int type, 
+		int length, boolean primaryKey, boolean nullable, boolean autoIncrement,
+		ForeignKey<T> foreign, boolean lazy, boolean indexed, boolean unique)
 	{
 		this.type = type;
 		this.name = Objects.requireNonNull(name);
@@ -90,6 +118,10 @@ public class Column <T>
 		this.nullable = nullable;
 		this.autoIncrement = autoIncrement;
 		this.foreignKey = foreign;
+		this.lazy = lazy;
+		this.indexed = indexed || unique;
+		this.unique = unique;
+		this.codec = (TypeCodec<T>) TypeCodecs.forType(type, null);
 	}
 	
 	@SuppressWarnings("unchecked")
@@ -133,6 +165,71 @@ public class Column <T>
 		return autoIncrement;
 	}
 	
+	public boolean isLargeObject()
+	{
+		return LARGE_OBJECT_TYPES.contains(type);
+	}
+	
+	public boolean isCharacterData()
+	{
+		return CHARACTER_TYPES.contains(type);
+	}
+	
+	/**
+	 * Lazy columns are left out of query select lists and fetched for the
+	 * whole result the first time a row reads them.
+	 */
+	public boolean isLazy()
+	{
+		return lazy;
+	}
+	
+	public TypeCodec<T> getCodec()
+	{
+		return codec;
+	}
+	
+	void setCodec(TypeCodec<T> codec)
+	{
+		this.codec = codec;
+	}
+	
+	/**
+	 * Binds this column's value with its codec.
+	 */
+	public void bind(PreparedStatement statement, int index) throws SQLException
+	{
+		bind(statement, index, value);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public void bind(PreparedStatement statement, int index, Object value) throws SQLException
+	{
+		if(value == null)
+		{
+			statement.setNull(index, type == TEXT ? Types.LONGVARCHAR : type <= TINYBLOB && type >= LONGBLOB ? Types.LONGVARBINARY : type);
+		}
+		else
+		{
+			getCodec().set(statement, index, (T) value);
+		}
+	}
+	
+	public T read(ResultSet results, int index) throws SQLException
+	{
+		return getCodec().get(results, index);
+	}
+	
+	public boolean isIndexed()
+	{
+		return indexed;
+	}
+	
+	public boolean isUnique()
+	{
+		return unique;
+	}
+	
 	public ForeignKey<T> getForeignKey()
 	{
 		return foreignKey;
@@ -173,6 +270,9 @@ public class Column <T>
 			   this.primaryKey == otherC.primaryKey &&
 			   this.nullable == otherC.nullable &&
 			   this.autoIncrement == otherC.autoIncrement &&
+			   this.lazy == otherC.lazy &&
+			   this.indexed == otherC.indexed &&
+			   this.unique == otherC.unique &&
 			   this.value.equals(otherC.value);
 	}
 	
@@ -180,7 +280,8 @@ public class Column <T>
 	{
 		var<T> newColumn = new Column<T>(this.name,
 				this.type, this.length, this.primaryKey,
-				this.nullable, this.autoIncrement, this.foreignKey);
+				this.nullable, this.autoIncrement, this.foreignKey, this.lazy, this.indexed, this.unique);
+		newColumn.codec = this.codec;
 		
 		return getClass().cast(newColumn);
 	}
@@ -12,6 +12,11 @@ public class ColumnBuilder<F>
 	private boolean autoIncrement;
 	private ForeignKey<F> foreignKey;
 	private ForeignKeyBuilder<F> foreignKeyBuilder;
+	private boolean lazy;
+	private boolean indexed;
+	private boolean unique;
+	private Class<F> javaType;
+	private TypeCodec<F> codec;
 	
 	public static <J> ColumnBuilder<J> start(int type)
 	{
@@ -53,6 +58,40 @@ public class ColumnBuilder<F>
 		return this;
 	}
 	
+	public ColumnBuilder<F> isLazy(boolean b)
+	{
+		this.lazy = b;
+		return this;
+	}
+	
+	public ColumnBuilder<F> isIndexed(boolean b)
+	{
+		this.indexed = b;
+		return this;
+	}
+	
+	public ColumnBuilder<F> isUnique(boolean b)
+	{
+		this.unique = b;
+		return this;
+	}
+	
+	/**
+	 * Sets the Java type of the column's values, used to pick a codec
+	 * registered for that type.
+	 */
+	public ColumnBuilder<F> setJavaType(Class<F> javaType)
+	{
+		this.javaType = javaType;
+		return this;
+	}
+	
+	public ColumnBuilder<F> setCodec(TypeCodec<F> codec)
+	{
+		this.codec = codec;
+		return this;
+	}
+	
 	public ColumnBuilder<F> setForeignKey(ForeignKeyBuilder<F> keyBuilder)
 	{
 		this.foreignKey = null;
@@ -67,6 +106,7 @@ public class ColumnBuilder<F>
 		return this;
 	}
 	
+	@SuppressWarnings("unchecked")
 	public Column<F> build()
 	{
 		if(this.foreignKeyBuilder != null)
@@ -75,8 +115,24 @@ public class ColumnBuilder<F>
 													.build();
 		}
 		
-		return new Column<F>(this.name, this.type,
+		if(this.lazy && this.primaryKey)
+		{
+			throw new IllegalStateException("A primary key column cannot be lazy");
+		}
+		
+		var column = new Column<F>(this.name, this.type,
 			this.length, this.primaryKey, this.nullable, this.autoIncrement,
-			this.foreignKey);
+			this.foreignKey, this.lazy, this.indexed, this.unique);
+		
+		if(this.codec != null)
+		{
+			column.setCodec(this.codec);
+		}
+		else if(this.javaType != null)
+		{
+			column.setCodec((TypeCodec<F>) TypeCodecs.forType(this.type, this.javaType));
+		}
+		
+		return column;
 	}
 }
@@ -1,9 +1,19 @@
 package model;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class Database
 {
@@ -15,12 +25,20 @@ public class Database
 	private String url;
 	private String username;
 	private String password;
+	private final List<Database> replicas;
+	private Dialect dialect;
+	private volatile AdmissionLimiter admissionLimiter;
+	private final List<StatementInterceptor> interceptors;
+	private final Map<String, List<Index>> indexes;
 	
 	public Database(String url, String username, String password)
 	{
 		setURL(url);
 		setUsername(username);
 		setPassword(password);
+		replicas = new CopyOnWriteArrayList<Database>();
+		interceptors = new CopyOnWriteArrayList<StatementInterceptor>();
+		indexes = new ConcurrentHashMap<String, List<Index>>();
 	}
 	
 	public void setURL(String url)
@@ -38,6 +56,57 @@ public class Database
 		this.password = Objects.requireNonNull(password);
 	}
 	
+	public void setDialect(Dialect dialect)
+	{
+		this.dialect = dialect;
+	}
+	
+	public Dialect getDialect()
+	{
+		return dialect != null ? dialect : Dialect.fromURL(url);
+	}
+	
+	public void setAdmissionLimiter(AdmissionLimiter admissionLimiter)
+	{
+		this.admissionLimiter = admissionLimiter;
+	}
+	
+	public AdmissionLimiter getAdmissionLimiter()
+	{
+		return admissionLimiter;
+	}
+	
+	public Database addInterceptor(StatementInterceptor interceptor)
+	{
+		interceptors.add(Objects.requireNonNull(interceptor));
+		return this;
+	}
+	
+	public void removeInterceptor(StatementInterceptor interceptor)
+	{
+		interceptors.remove(interceptor);
+	}
+	
+	public List<StatementInterceptor> getInterceptors()
+	{
+		return Collections.unmodifiableList(interceptors);
+	}
+	
+	/**
+	 * Declares an extra index, created on this database (or on every shard of
+	 * it) when its table is created.
+	 */
+	public Database addIndex(Index index)
+	{
+		indexes.computeIfAbsent(index.getTableName(), k -> new CopyOnWriteArrayList<Index>()).add(index);
+		return this;
+	}
+	
+	public List<Index> getIndexes(String tableName)
+	{
+		return Collections.unmodifiableList(indexes.getOrDefault(tableName, List.of()));
+	}
+	
 	public String getURL()
 	{
 		return url;
@@ -53,9 +122,143 @@ public class Database
 		return password;
 	}
 	
+	public Database addReplica(Database replica)
+	{
+		replicas.add(Objects.requireNonNull(replica));
+		return this;
+	}
+	
+	public void removeReplica(Database replica)
+	{
+		replicas.remove(replica);
+	}
+	
+	public List<Database> getReplicas()
+	{
+		return Collections.unmodifiableList(replicas);
+	}
+	
+	public List<Database> getShards()
+	{
+		return List.of(this);
+	}
+	
+	public Database route(Object... keyValues)
+	{
+		return this;
+	}
+	
+	public Database route(Table row)
+	{
+		return this;
+	}
+	
 	public Connection getConnection() throws SQLException
 	{
-		return DriverManager.getConnection(url, username, password);
+		var limiter = admissionLimiter;
+		if(limiter == null)
+		{
+			return connect();
+		}
+		
+		var permit = limiter.acquire();
+		try
+		{
+			return admitted(connect(), limiter, permit);
+		}
+		catch(SQLException | RuntimeException e)
+		{
+			permit.close();
+			throw e;
+		}
+	}
+	
+	private Connection connect() throws SQLException
+	{
+		var active = new ArrayList<StatementInterceptor>(interceptors);
+		var detector = QueryDetector.current();
+		if(detector != null)
+		{
+			active.add(detector);
+		}
+		
+		var event = new JdbcEvents.ConnectEvent();
+		event.begin();
+		var start = System.nanoTime();
+		var connection = DriverManager.getConnection(url, username, password);
+		var elapsed = Duration.ofNanos(System.nanoTime() - start);
+		event.end();
+		if(event.shouldCommit())
+		{
+			event.url = url;
+			event.commit();
+		}
+		
+		if(active.isEmpty() && !JdbcEvents.enabled())
+		{
+			return connection;
+		}
+		
+		for(var interceptor : active)
+		{
+			interceptor.onConnect(this, elapsed);
+		}
+		
+		return InterceptedConnection.wrap(this, connection, active);
+	}
+	
+	/**
+	 * Wraps a connection so closing it gives its slot back to the limiter and
+	 * its statements report their execution times to it.
+	 */
+	private static Connection admitted(Connection connection, AdmissionLimiter limiter, AdmissionLimiter.Permit permit)
+	{
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+			try
+			{
+				var result = method.invoke(connection, args);
+				if(result instanceof Statement)
+				{
+					var sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+					return timed((Statement) result, method.getReturnType(), sql, limiter);
+				}
+				return result;
+			}
+			catch(InvocationTargetException e)
+			{
+				throw e.getCause();
+			}
+			finally
+			{
+				if(method.getName().equals("close"))
+				{
+					permit.close();
+				}
+			}
+		});
+	}
+	
+	private static Object timed(Statement statement, Class<?> type, String prepared, AdmissionLimiter limiter)
+	{
+		return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+			var start = System.nanoTime();
+			try
+			{
+				return method.invoke(statement, args);
+			}
+			catch(InvocationTargetException e)
+			{
+				throw e.getCause();
+			}
+			finally
+			{
+				if(method.getName().startsWith("execute"))
+				{
+					var sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : prepared;
+					limiter.recordLatency(sql, System.nanoTime() - start);
+				}
+			}
+		});
 	}
 	
 	public boolean canConnect()
@@ -0,0 +1,178 @@
+package model;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public enum Dialect
+{
+	MYSQL, POSTGRESQL, H2, STANDARD;
+	
+	public static Dialect fromURL(String url)
+	{
+		if(url.startsWith("jdbc:mysql:") || url.startsWith("jdbc:mariadb:"))
+		{
+			return MYSQL;
+		}
+		if(url.startsWith("jdbc:postgresql:"))
+		{
+			return POSTGRESQL;
+		}
+		if(url.startsWith("jdbc:h2:"))
+		{
+			return H2;
+		}
+		
+		return STANDARD;
+	}
+	
+	/**
+	 * Whether the database creates an index for foreign key columns on its own.
+	 */
+	public boolean indexesForeignKeys()
+	{
+		return this == MYSQL || this == H2;
+	}
+	
+	public boolean supportsIncludedColumns()
+	{
+		return this == POSTGRESQL;
+	}
+	
+	public boolean supportsPartialIndexes()
+	{
+		return this == POSTGRESQL;
+	}
+	
+	public boolean supportsCreateIndexIfNotExists()
+	{
+		return this == POSTGRESQL || this == H2;
+	}
+	
+	/**
+	 * Returns the fetch size that makes the driver stream a result from the
+	 * server cursor in batches of about the given number of rows. MySQL only
+	 * streams, one row at a time, with Integer.MIN_VALUE.
+	 */
+	public int streamingFetchSize(int rows)
+	{
+		return this == MYSQL ? Integer.MIN_VALUE : rows;
+	}
+	
+	/**
+	 * Whether fetch sizes can be changed on an open result to tune the
+	 * following fetches.
+	 */
+	public boolean supportsFetchSizeChanges()
+	{
+		return this != MYSQL;
+	}
+	
+	/**
+	 * Whether the driver only reads a result through a cursor inside a
+	 * transaction, buffering the whole result when autocommit is on.
+	 */
+	public boolean requiresTransactionForCursor()
+	{
+		return this == POSTGRESQL;
+	}
+	
+	/**
+	 * Returns the most parameters one statement may bind. SQL Server, the
+	 * strictest common database, allows 2100, which is assumed for unknown
+	 * databases.
+	 */
+	public int getMaxParameters()
+	{
+		switch(this)
+		{
+			case MYSQL:
+			case POSTGRESQL:
+				return 65535;
+			case H2:
+				return 32767;
+			default:
+				return 2100;
+		}
+	}
+	
+	/**
+	 * Returns the clause limiting a query to the number of rows bound to its
+	 * single parameter, to be appended after any ORDER BY.
+	 */
+	public String generateLimitClause()
+	{
+		if(this == STANDARD)
+		{
+			return "\nFETCH FIRST ? ROWS ONLY";
+		}
+		
+		return "\nLIMIT ?";
+	}
+	
+	/**
+	 * Whether the exception reports that an index or other object being
+	 * created already exists.
+	 */
+	public boolean isDuplicateObject(SQLException e)
+	{
+		switch(this)
+		{
+			case MYSQL:
+				return e.getErrorCode() == 1061;
+			case POSTGRESQL:
+				return "42P07".equals(e.getSQLState());
+			case H2:
+				return e.getErrorCode() == 42111 || "42S11".equals(e.getSQLState());
+			default:
+				return "42S11".equals(e.getSQLState());
+		}
+	}
+	
+	/**
+	 * Generates a single statement inserting the given columns, or updating the
+	 * non-key columns when a row with the same keys already exists. Parameters
+	 * are bound in the order of the columns list.
+	 */
+	public String generateUpsertString(String tableName, List<String> keyColumns, List<String> columns)
+	{
+		var updateColumns = columns.stream()
+								   .filter(c -> !keyColumns.contains(c))
+								   .collect(Collectors.toList());
+		var columnList = String.join(", ", columns);
+		var parameters = String.join(", ", columns.stream().map(c -> "?").toArray(String[]::new));
+		
+		switch(this)
+		{
+			case MYSQL:
+				return String.format("INSERT INTO %s (%s)\n"
+						+ "VALUES (%s)\n"
+						+ "ON DUPLICATE KEY UPDATE %s", tableName, columnList, parameters,
+						updateColumns.isEmpty() ? String.format("%1$s = %1$s", keyColumns.get(0))
+								: String.join(", ", updateColumns.stream().map(c -> String.format("%1$s = VALUES(%1$s)", c)).toArray(String[]::new)));
+			case POSTGRESQL:
+				return String.format("INSERT INTO %s (%s)\n"
+						+ "VALUES (%s)\n"
+						+ "ON CONFLICT (%s) %s", tableName, columnList, parameters,
+						String.join(", ", keyColumns),
+						updateColumns.isEmpty() ? "DO NOTHING"
+								: "DO UPDATE SET " + String.join(", ", updateColumns.stream().map(c -> String.format("%1$s = EXCLUDED.%1$s", c)).toArray(String[]::new)));
+			case H2:
+				return String.format("MERGE INTO %s (%s)\n"
+						+ "KEY (%s)\n"
+						+ "VALUES (%s)", tableName, columnList, String.join(", ", keyColumns), parameters);
+			default:
+				var sql = String.format("MERGE INTO %s\n"
+						+ "USING (VALUES (%s)) AS source (%s)\n"
+						+ "ON %s", tableName, parameters, columnList,
+						String.join(" AND ", keyColumns.stream().map(c -> String.format("%1$s.%2$s = source.%2$s", tableName, c)).toArray(String[]::new)));
+				if(!updateColumns.isEmpty())
+				{
+					sql += String.format("\nWHEN MATCHED THEN UPDATE SET %s", 
+							String.join(", ", updateColumns.stream().map(c -> String.format("%1$s = source.%1$s", c)).toArray(String[]::new)));
+				}
+				return sql + String.format("\nWHEN NOT MATCHED THEN INSERT (%s) VALUES (%s)", columnList,
+						String.join(", ", columns.stream().map(c -> "source." + c).toArray(String[]::new)));
+		}
+	}
+}
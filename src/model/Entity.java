@@ -0,0 +1,17 @@
+package model;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a record or class whose table schema, SQL and row mapper are
+ * generated at build time into a companion {@code <Name>Schema} class.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface Entity
+{
+	String name();
+}
@@ -0,0 +1,20 @@
+package model;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface EntityColumn
+{
+	String name() default "";
+	int type();
+	int length() default 0;
+	boolean primaryKey() default false;
+	boolean nullable() default false;
+	boolean autoIncrement() default false;
+	boolean indexed() default false;
+	boolean unique() default false;
+}
@@ -0,0 +1,29 @@
+package model;
+
+public enum ExportFormat
+{
+	/**
+	 * RFC 4180 CSV in UTF-8 with a header row of column names.
+	 */
+	CSV("csv"),
+	
+	/**
+	 * A columnar binary format. The header holds the column count and each
+	 * column's name and JDBC type. Rows follow in blocks: the row count, then
+	 * for each column the byte length of its values followed by the values in
+	 * the row codec's tagged encoding. A block with zero rows ends the file.
+	 */
+	BINARY("bin");
+	
+	private final String extension;
+	
+	private ExportFormat(String extension)
+	{
+		this.extension = extension;
+	}
+	
+	public String getExtension()
+	{
+		return extension;
+	}
+}
@@ -0,0 +1,258 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Writes rows straight from a result set to a file through a pooled direct
+ * buffer, without building a Table for each row. In CSV, NULL is an empty
+ * field and the empty string is written quoted, as "".
+ */
+final class Exporter implements AutoCloseable
+{
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final int BLOCK_ROWS = 4096;
+	private static final int MAGIC = 0x4F524D58;
+	private static final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+	
+	private final ExportFormat format;
+	private final Column<?>[] columns;
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final CharsetEncoder encoder;
+	private final StringBuilder line;
+	private final RowCodec codec;
+	private final Object[][] block;
+	private int blockRows;
+	private long rows;
+	
+	Exporter(Path file, ExportFormat format, Column<?>[] columns) throws IOException
+	{
+		this.format = format;
+		this.columns = columns;
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		
+		var pooled = buffers.poll();
+		buffer = pooled != null ? pooled : ByteBuffer.allocateDirect(BUFFER_SIZE);
+		buffer.clear();
+		
+		encoder = StandardCharsets.UTF_8.newEncoder();
+		line = new StringBuilder();
+		codec = new RowCodec();
+		block = format == ExportFormat.BINARY ? new Object[columns.length][BLOCK_ROWS] : null;
+		
+		writeHeader();
+	}
+	
+	long getRows()
+	{
+		return rows;
+	}
+	
+	void write(Object[] values) throws IOException
+	{
+		if(format == ExportFormat.CSV)
+		{
+			line.setLength(0);
+			for(var i = 0; i < columns.length; i++)
+			{
+				if(i > 0)
+				{
+					line.append(',');
+				}
+				appendCSV(values[i]);
+			}
+			line.append("\r\n");
+			writeText(line);
+		}
+		else
+		{
+			for(var i = 0; i < columns.length; i++)
+			{
+				block[i][blockRows] = values[i];
+			}
+			if(++blockRows == BLOCK_ROWS)
+			{
+				writeBlock();
+			}
+		}
+		
+		rows++;
+	}
+	
+	private void writeHeader() throws IOException
+	{
+		if(format == ExportFormat.CSV)
+		{
+			line.setLength(0);
+			for(var i = 0; i < columns.length; i++)
+			{
+				if(i > 0)
+				{
+					line.append(',');
+				}
+				appendCSV(columns[i].getName());
+			}
+			line.append("\r\n");
+			writeText(line);
+			return;
+		}
+		
+		ensure(3 * Integer.BYTES);
+		buffer.putInt(MAGIC).putInt(1).putInt(columns.length);
+		for(var column : columns)
+		{
+			var name = column.getName().getBytes(StandardCharsets.UTF_8);
+			ensure(2 * Integer.BYTES + name.length);
+			buffer.putInt(name.length).put(name).putInt(column.getType());
+		}
+	}
+	
+	private void writeBlock() throws IOException
+	{
+		ensure(Integer.BYTES);
+		buffer.putInt(blockRows);
+		
+		for(var i = 0; i < columns.length; i++)
+		{
+			var values = blockRows == BLOCK_ROWS ? block[i] : Arrays.copyOf(block[i], blockRows);
+			var encoded = codec.encode(values);
+			ensure(Integer.BYTES);
+			buffer.putInt(encoded.remaining());
+			writeBytes(encoded);
+			Arrays.fill(block[i], null);
+		}
+		
+		blockRows = 0;
+	}
+	
+	private void appendCSV(Object value)
+	{
+		if(value == null)
+		{
+			return;
+		}
+		
+		String text;
+		if(value instanceof byte[])
+		{
+			text = Base64.getEncoder().encodeToString((byte[]) value);
+		}
+		else
+		{
+			text = value.toString();
+		}
+		
+		if(!text.isEmpty() && text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0)
+		{
+			line.append(text);
+			return;
+		}
+		
+		line.append('"');
+		for(var i = 0; i < text.length(); i++)
+		{
+			var c = text.charAt(i);
+			if(c == '"')
+			{
+				line.append('"');
+			}
+			line.append(c);
+		}
+		line.append('"');
+	}
+	
+	private void writeText(CharSequence text) throws IOException
+	{
+		var chars = CharBuffer.wrap(text);
+		encoder.reset();
+		while(true)
+		{
+			var result = encoder.encode(chars, buffer, true);
+			if(result == CoderResult.OVERFLOW)
+			{
+				flush();
+			}
+			else if(result.isError())
+			{
+				result.throwException();
+			}
+			else
+			{
+				return;
+			}
+		}
+	}
+	
+	private void writeBytes(ByteBuffer bytes) throws IOException
+	{
+		while(bytes.hasRemaining())
+		{
+			if(!buffer.hasRemaining())
+			{
+				flush();
+			}
+			
+			var chunk = bytes.duplicate();
+			chunk.limit(chunk.position() + Math.min(chunk.remaining(), buffer.remaining()));
+			buffer.put(chunk);
+			bytes.position(chunk.position());
+		}
+	}
+	
+	private void ensure(int bytes) throws IOException
+	{
+		if(buffer.remaining() < bytes)
+		{
+			flush();
+		}
+	}
+	
+	private void flush() throws IOException
+	{
+		buffer.flip();
+		while(buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+	
+	/**
+	 * Writes any buffered rows, the end of a binary file, and closes the
+	 * file. The buffer goes back to the pool.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			if(format == ExportFormat.BINARY)
+			{
+				if(blockRows > 0)
+				{
+					writeBlock();
+				}
+				ensure(Integer.BYTES);
+				buffer.putInt(0);
+			}
+			flush();
+		}
+		finally
+		{
+			channel.close();
+			buffer.clear();
+			buffers.offer(buffer);
+		}
+	}
+}
@@ -0,0 +1,445 @@
+package model;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+import model.Filter.FilterType;
+import model.Filter.RelationType;
+
+/**
+ * An immutable predicate over a table's columns. Each expression renders its
+ * SQL fragment and parameter list once, when it is built, and can also be
+ * evaluated directly against rows in memory using SQL's three-valued logic.
+ */
+public abstract class FilterExpression
+{
+	private final String sql;
+	private final List<Object> parameters;
+	private final List<Column<?>> parameterColumns;
+	
+	private FilterExpression(String sql, List<Object> parameters, List<Column<?>> parameterColumns)
+	{
+		this.sql = sql;
+		this.parameters = Collections.unmodifiableList(parameters);
+		this.parameterColumns = Collections.unmodifiableList(parameterColumns);
+	}
+	
+	public static FilterExpression compare(Column<?> column, FilterType type, Object value)
+	{
+		return new Comparison(column, type, value);
+	}
+	
+	public static FilterExpression equal(Column<?> column, Object value)
+	{
+		return compare(column, FilterType.EQUAL, value);
+	}
+	
+	public static FilterExpression in(Column<?> column, Collection<?> values)
+	{
+		return new In(column, values);
+	}
+	
+	public static FilterExpression between(Column<?> column, Object low, Object high)
+	{
+		return new Between(column, low, high);
+	}
+	
+	public static FilterExpression isNull(Column<?> column)
+	{
+		return new IsNull(column, true);
+	}
+	
+	public static FilterExpression isNotNull(Column<?> column)
+	{
+		return new IsNull(column, false);
+	}
+	
+	public static FilterExpression and(FilterExpression... expressions)
+	{
+		return expressions.length == 1 ? expressions[0] : new Junction(RelationType.AND, expressions);
+	}
+	
+	public static FilterExpression or(FilterExpression... expressions)
+	{
+		return expressions.length == 1 ? expressions[0] : new Junction(RelationType.OR, expressions);
+	}
+	
+	public static FilterExpression not(FilterExpression expression)
+	{
+		return new Not(expression);
+	}
+	
+	/**
+	 * Matches the rows with any of the given primary keys: an IN list for a
+	 * single key column, otherwise an OR of per-row conditions.
+	 */
+	static FilterExpression primaryKeyIn(Column<?>[] primaryKeys, Collection<Key> keys)
+	{
+		if(primaryKeys.length == 1)
+		{
+			var values = new ArrayList<Object>();
+			keys.forEach(k -> values.add(k.getValues()[0]));
+			return in(primaryKeys[0], values);
+		}
+		
+		return or(keys.stream()
+				.map(k -> and(IntStream.range(0, primaryKeys.length)
+						.mapToObj(i -> equal(primaryKeys[i], k.getValues()[i]))
+						.toArray(FilterExpression[]::new)))
+				.toArray(FilterExpression[]::new));
+	}
+	
+	/**
+	 * Converts a Filter, whose relations follow SQL precedence with AND
+	 * binding tighter than OR, into an expression over its column values.
+	 */
+	public static FilterExpression of(Filter filter)
+	{
+		var groups = new LinkedList<FilterExpression>();
+		var group = new LinkedList<FilterExpression>();
+		var typesIt = filter.getTypes().iterator();
+		var relationsIt = filter.getRelations().iterator();
+		
+		for(var column : filter.getColumns())
+		{
+			var comparison = compare(column, typesIt.next(), column.getValue());
+			if(!group.isEmpty() && relationsIt.next() == RelationType.OR)
+			{
+				groups.add(and(group.toArray(FilterExpression[]::new)));
+				group.clear();
+			}
+			group.add(comparison);
+		}
+		groups.add(and(group.toArray(FilterExpression[]::new)));
+		
+		return or(groups.toArray(FilterExpression[]::new));
+	}
+	
+	public FilterExpression and(FilterExpression other)
+	{
+		return and(this, other);
+	}
+	
+	public FilterExpression or(FilterExpression other)
+	{
+		return or(this, other);
+	}
+	
+	public FilterExpression negate()
+	{
+		return not(this);
+	}
+	
+	public List<Object> getParameters()
+	{
+		return parameters;
+	}
+	
+	/**
+	 * Binds this expression's parameters starting at the given index and
+	 * returns the next free index.
+	 */
+	public int bind(PreparedStatement statement, int index) throws SQLException
+	{
+		for(var i = 0; i < parameters.size(); i++)
+		{
+			parameterColumns.get(i).bind(statement, index++, parameters.get(i));
+		}
+		
+		return index;
+	}
+	
+	public boolean test(Table row)
+	{
+		return Boolean.TRUE.equals(evaluate(row));
+	}
+	
+	/**
+	 * Returns the expressions that must all hold for this one to hold.
+	 */
+	List<FilterExpression> conjuncts()
+	{
+		return Collections.singletonList(this);
+	}
+	
+	/**
+	 * Returns true, false, or null when the result is unknown because of a
+	 * null value.
+	 */
+	abstract Boolean evaluate(Table row);
+	
+	public String toString()
+	{
+		return sql;
+	}
+	
+	static final class Comparison extends FilterExpression
+	{
+		private final Column<?> column;
+		private final FilterType type;
+		private final Object value;
+		
+		public Comparison(Column<?> column, FilterType type, Object value)
+		{
+			super(String.format("%s %s ?", column.getName(), type.symbol()), Collections.singletonList(value), Collections.singletonList(column));
+			this.column = column;
+			this.type = Objects.requireNonNull(type);
+			this.value = value;
+		}
+		
+		Column<?> getColumn()
+		{
+			return column;
+		}
+		
+		FilterType getType()
+		{
+			return type;
+		}
+		
+		Object getValue()
+		{
+			return value;
+		}
+		
+		@Override
+		Boolean evaluate(Table row)
+		{
+			var current = row.getColumnValue(column.getName());
+			if(current == null || value == null)
+			{
+				return null;
+			}
+			
+			var result = Values.compare(current, value);
+			switch(type)
+			{
+				case EQUAL:
+					return result == 0;
+				case NOT_EQUAL:
+					return result != 0;
+				case GREATER_THAN:
+					return result > 0;
+				case LESS_THAN:
+					return result < 0;
+				case GREATER_THAN_EQUAL:
+					return result >= 0;
+				default:
+					return result <= 0;
+			}
+		}
+	}
+	
+	static final class In extends FilterExpression
+	{
+		private final Column<?> column;
+		private final List<Object> values;
+		
+		public In(Column<?> column, Collection<?> values)
+		{
+			super(values.isEmpty() ? "1 = 0" : String.format("%s IN (%s)", column.getName(), String.join(", ", Collections.nCopies(values.size(), "?"))),
+					new ArrayList<Object>(values), Collections.nCopies(values.size(), column));
+			this.column = column;
+			this.values = new ArrayList<Object>(values);
+		}
+		
+		Column<?> getColumn()
+		{
+			return column;
+		}
+		
+		List<Object> getValues()
+		{
+			return values;
+		}
+		
+		@Override
+		Boolean evaluate(Table row)
+		{
+			var current = row.getColumnValue(column.getName());
+			if(values.isEmpty())
+			{
+				return false;
+			}
+			if(current == null)
+			{
+				return null;
+			}
+			
+			var unknown = false;
+			for(var value : values)
+			{
+				if(value == null)
+				{
+					unknown = true;
+				}
+				else if(Values.equal(current, value))
+				{
+					return true;
+				}
+			}
+			return unknown ? null : false;
+		}
+	}
+	
+	static final class Between extends FilterExpression
+	{
+		private final Column<?> column;
+		private final Object low;
+		private final Object high;
+		
+		public Between(Column<?> column, Object low, Object high)
+		{
+			super(String.format("%s BETWEEN ? AND ?", column.getName()), Arrays.asList(low, high), Arrays.asList(column, column));
+			this.column = column;
+			this.low = low;
+			this.high = high;
+		}
+		
+		Column<?> getColumn()
+		{
+			return column;
+		}
+		
+		Object getLow()
+		{
+			return low;
+		}
+		
+		Object getHigh()
+		{
+			return high;
+		}
+		
+		@Override
+		Boolean evaluate(Table row)
+		{
+			var current = row.getColumnValue(column.getName());
+			if(current == null || low == null || high == null)
+			{
+				return null;
+			}
+			
+			return Values.compare(current, low) >= 0 && Values.compare(current, high) <= 0;
+		}
+	}
+	
+	static final class IsNull extends FilterExpression
+	{
+		private final Column<?> column;
+		private final boolean isNull;
+		
+		public IsNull(Column<?> column, boolean isNull)
+		{
+			super(String.format("%s IS %sNULL", column.getName(), isNull ? "" : "NOT "), Collections.emptyList(), Collections.emptyList());
+			this.column = column;
+			this.isNull = isNull;
+		}
+		
+		@Override
+		Boolean evaluate(Table row)
+		{
+			return (row.getColumnValue(column.getName()) == null) == isNull;
+		}
+	}
+	
+	static final class Junction extends FilterExpression
+	{
+		private final RelationType relation;
+		private final FilterExpression[] expressions;
+		
+		public Junction(RelationType relation, FilterExpression[] expressions)
+		{
+			super(String.format("(%s)", String.join(String.format(" %s ", relation), Arrays.stream(expressions).map(FilterExpression::toString).toArray(String[]::new))),
+					parameters(expressions), parameterColumns(expressions));
+			if(expressions.length == 0)
+			{
+				throw new IllegalArgumentException("Must combine at least one expression");
+			}
+			
+			this.relation = relation;
+			this.expressions = expressions.clone();
+		}
+		
+		@Override
+		List<FilterExpression> conjuncts()
+		{
+			if(relation != RelationType.AND)
+			{
+				return super.conjuncts();
+			}
+			
+			var conjuncts = new ArrayList<FilterExpression>();
+			for(var expression : expressions)
+			{
+				conjuncts.addAll(expression.conjuncts());
+			}
+			return conjuncts;
+		}
+		
+		private static List<Column<?>> parameterColumns(FilterExpression[] expressions)
+		{
+			var columns = new ArrayList<Column<?>>();
+			for(var expression : expressions)
+			{
+				columns.addAll(expression.parameterColumns);
+			}
+			return columns;
+		}
+		
+		private static List<Object> parameters(FilterExpression[] expressions)
+		{
+			var parameters = new ArrayList<Object>();
+			for(var expression : expressions)
+			{
+				parameters.addAll(expression.getParameters());
+			}
+			return parameters;
+		}
+		
+		@Override
+		Boolean evaluate(Table row)
+		{
+			var unknown = false;
+			for(var expression : expressions)
+			{
+				var result = expression.evaluate(row);
+				if(result == null)
+				{
+					unknown = true;
+				}
+				else if(result == (relation == RelationType.OR))
+				{
+					return result;
+				}
+			}
+			return unknown ? null : relation == RelationType.AND;
+		}
+	}
+	
+	static final class Not extends FilterExpression
+	{
+		private final FilterExpression expression;
+		
+		public Not(FilterExpression expression)
+		{
+			super(String.format("NOT (%s)", expression), expression.getParameters(), expression.parameterColumns);
+			this.expression = expression;
+		}
+		
+		@Override
+		Boolean evaluate(Table row)
+		{
+			var result = expression.evaluate(row);
+			return result == null ? null : !result;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package model;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An index on one or more columns of a table, created alongside the table
+ * once added to a database with {@link Database#addIndex(Index)}.
+ * Indexes may be unique, cover extra columns with INCLUDE, or be partial with
+ * a WHERE predicate; dialects without those features get the nearest
+ * equivalent.
+ */
+public class Index
+{
+	private final String tableName;
+	private final List<String> columns;
+	private final List<String> included;
+	private String name;
+	private boolean unique;
+	private String predicate;
+	
+	public Index(String tableName, String... columns)
+	{
+		if(columns.length == 0)
+		{
+			throw new IllegalArgumentException("An index needs at least one column");
+		}
+		
+		this.tableName = Objects.requireNonNull(tableName);
+		this.columns = List.of(columns);
+		included = new LinkedList<String>();
+	}
+	
+	public Index(Table table, Column<?>... columns)
+	{
+		this(table.getName(), Arrays.stream(columns).map(Column::getName).toArray(String[]::new));
+	}
+	
+	public Index setName(String name)
+	{
+		this.name = Objects.requireNonNull(name);
+		return this;
+	}
+	
+	public Index isUnique(boolean b)
+	{
+		unique = b;
+		return this;
+	}
+	
+	public Index include(String... columns)
+	{
+		included.addAll(List.of(columns));
+		return this;
+	}
+	
+	public Index include(Column<?>... columns)
+	{
+		Arrays.stream(columns).map(Column::getName).forEach(included::add);
+		return this;
+	}
+	
+	public Index where(String predicate)
+	{
+		this.predicate = predicate;
+		return this;
+	}
+	
+	public String getName()
+	{
+		if(name != null)
+		{
+			return name;
+		}
+		
+		return String.format("%s_%s_%s", unique ? "ux" : "ix", tableName, String.join("_", columns));
+	}
+	
+	public String getTableName()
+	{
+		return tableName;
+	}
+	
+	public List<String> getColumns()
+	{
+		return columns;
+	}
+	
+	public boolean isUnique()
+	{
+		return unique;
+	}
+	
+	public String generateCreateString(Dialect dialect)
+	{
+		var keyColumns = new LinkedList<String>(columns);
+		var include = "";
+		if(!included.isEmpty())
+		{
+			if(dialect.supportsIncludedColumns())
+			{
+				include = String.format(" INCLUDE (%s)", String.join(", ", included));
+			}
+			else if(!unique)
+			{
+				included.stream().filter(c -> !keyColumns.contains(c)).forEach(keyColumns::add);
+			}
+		}
+		
+		var where = "";
+		if(predicate != null)
+		{
+			if(dialect.supportsPartialIndexes())
+			{
+				where = String.format(" WHERE %s", predicate);
+			}
+			else if(unique)
+			{
+				throw new IllegalStateException(String.format("%s does not support partial unique index %s", dialect, getName()));
+			}
+		}
+		
+		return String.format("CREATE %sINDEX %s%s ON %s (%s)%s%s", unique ? "UNIQUE " : "",
+				dialect.supportsCreateIndexIfNotExists() ? "IF NOT EXISTS " : "", getName(), tableName,
+				String.join(", ", keyColumns), include, where);
+	}
+	
+	@Override
+	public String toString()
+	{
+		return generateCreateString(Dialect.STANDARD);
+	}
+}
@@ -0,0 +1,301 @@
+package model;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Wraps connections, statements and result sets so each JDBC phase is passed
+ * to the interceptors and recorded as a Flight Recorder event.
+ */
+final class InterceptedConnection
+{
+	private static final Set<String> PREPARE_METHODS = Set.of("prepareStatement", "prepareCall");
+	private static final Set<String> EXECUTE_METHODS = Set.of("execute", "executeQuery", "executeUpdate", "executeLargeUpdate", "executeBatch", "executeLargeBatch");
+	private static final Set<String> RESULT_METHODS = Set.of("getResultSet", "getGeneratedKeys");
+	
+	private final Database database;
+	private final List<StatementInterceptor> interceptors;
+	
+	private InterceptedConnection(Database database, List<StatementInterceptor> interceptors)
+	{
+		this.database = database;
+		this.interceptors = interceptors;
+	}
+	
+	static Connection wrap(Database database, Connection connection, List<StatementInterceptor> interceptors)
+	{
+		var intercepted = new InterceptedConnection(database, interceptors);
+		return proxy(Connection.class, (method, args) -> intercepted.connection(connection, method, args));
+	}
+	
+	private Object connection(Connection connection, Method method, Object[] args) throws Throwable
+	{
+		var name = method.getName();
+		if(PREPARE_METHODS.contains(name))
+		{
+			var sql = prepare((String) args[0]);
+			args[0] = sql;
+			var event = new JdbcEvents.PrepareEvent();
+			event.begin();
+			var statement = (Statement) invoke(connection, method, args);
+			event.end();
+			if(event.shouldCommit())
+			{
+				event.sql = sql;
+				event.commit();
+			}
+			var context = new StatementContext(database, sql);
+			return proxy(method.getReturnType(), (m, a) -> statement(statement, context, m, a));
+		}
+		if(name.equals("createStatement"))
+		{
+			var statement = (Statement) invoke(connection, method, args);
+			var batch = new ArrayList<String>();
+			return proxy(method.getReturnType(), (m, a) -> plainStatement(statement, batch, m, a));
+		}
+		if(name.equals("commit"))
+		{
+			var event = new JdbcEvents.CommitEvent();
+			event.begin();
+			var start = System.nanoTime();
+			Throwable failure = null;
+			try
+			{
+				return invoke(connection, method, args);
+			}
+			catch(Throwable e)
+			{
+				failure = e;
+				throw e;
+			}
+			finally
+			{
+				var elapsed = Duration.ofNanos(System.nanoTime() - start);
+				event.end();
+				if(event.shouldCommit())
+				{
+					event.url = database.getURL();
+					event.failed = failure != null;
+					event.commit();
+				}
+				for(var interceptor : interceptors)
+				{
+					interceptor.onCommit(database, elapsed, failure);
+				}
+			}
+		}
+		
+		return invoke(connection, method, args);
+	}
+	
+	private String prepare(String sql)
+	{
+		for(var interceptor : interceptors)
+		{
+			sql = interceptor.onPrepare(database, sql);
+		}
+		return sql;
+	}
+	
+	/**
+	 * Handles a statement from createStatement, whose SQL arrives with each
+	 * execute or addBatch call rather than up front.
+	 */
+	private Object plainStatement(Statement statement, List<String> batch, Method method, Object[] args) throws Throwable
+	{
+		var name = method.getName();
+		var hasSQL = args != null && args.length > 0 && args[0] instanceof String;
+		if(name.equals("addBatch") && hasSQL)
+		{
+			args[0] = prepare((String) args[0]);
+			batch.add((String) args[0]);
+		}
+		else if(name.equals("clearBatch"))
+		{
+			batch.clear();
+		}
+		else if(EXECUTE_METHODS.contains(name))
+		{
+			StatementContext context;
+			if(hasSQL)
+			{
+				var sql = prepare((String) args[0]);
+				args[0] = sql;
+				context = new StatementContext(database, sql);
+			}
+			else
+			{
+				context = new StatementContext(database, String.join(";\n", batch));
+				batch.clear();
+			}
+			return execute(statement, context, method, args);
+		}
+		
+		return invoke(statement, method, args);
+	}
+	
+	private Object statement(Statement statement, StatementContext prepared, Method method, Object[] args) throws Throwable
+	{
+		var name = method.getName();
+		if(name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer)
+		{
+			var index = (Integer) args[0];
+			var value = name.equals("setNull") ? null : args[1];
+			var event = new JdbcEvents.BindEvent();
+			event.begin();
+			prepared.setParameter(index, value);
+			for(var interceptor : interceptors)
+			{
+				interceptor.onBind(prepared, index, value);
+			}
+			var result = invoke(statement, method, args);
+			event.end();
+			if(event.shouldCommit())
+			{
+				event.sql = prepared.getSQL();
+				event.index = index;
+				event.commit();
+			}
+			return result;
+		}
+		else if(name.equals("clearParameters"))
+		{
+			prepared.clearParameters();
+		}
+		else if(name.equals("addBatch") && (args == null || args.length == 0))
+		{
+			prepared.addBatch();
+		}
+		else if(EXECUTE_METHODS.contains(name))
+		{
+			var context = prepared;
+			if(args != null && args.length > 0 && args[0] instanceof String)
+			{
+				var sql = prepare((String) args[0]);
+				args[0] = sql;
+				context = new StatementContext(database, sql);
+			}
+			return execute(statement, context, method, args);
+		}
+		else if(RESULT_METHODS.contains(name))
+		{
+			return results((ResultSet) invoke(statement, method, args), prepared);
+		}
+		
+		return invoke(statement, method, args);
+	}
+	
+	private Object execute(Statement statement, StatementContext context, Method method, Object[] args) throws Throwable
+	{
+		for(var interceptor : interceptors)
+		{
+			var result = interceptor.beforeExecute(context);
+			if(result != null)
+			{
+				return result;
+			}
+		}
+		
+		var event = new JdbcEvents.ExecuteEvent();
+		event.begin();
+		var start = System.nanoTime();
+		Throwable failure = null;
+		try
+		{
+			var result = invoke(statement, method, args);
+			return result instanceof ResultSet ? results((ResultSet) result, context) : result;
+		}
+		catch(Throwable e)
+		{
+			failure = e;
+			throw e;
+		}
+		finally
+		{
+			var elapsed = Duration.ofNanos(System.nanoTime() - start);
+			event.end();
+			if(event.shouldCommit())
+			{
+				event.sql = context.getSQL();
+				event.parameters = context.getParameters().size();
+				event.failed = failure != null;
+				event.commit();
+			}
+			for(var interceptor : interceptors)
+			{
+				interceptor.afterExecute(context, elapsed, failure);
+			}
+			if(method.getName().endsWith("Batch"))
+			{
+				context.clearBatch();
+			}
+		}
+	}
+	
+	private ResultSet results(ResultSet results, StatementContext context)
+	{
+		if(results == null)
+		{
+			return null;
+		}
+		
+		var event = new JdbcEvents.FetchEvent();
+		event.begin();
+		var start = System.nanoTime();
+		var state = new int[2];
+		return proxy(ResultSet.class, (method, args) -> {
+			var name = method.getName();
+			var result = invoke(results, method, args);
+			if(name.equals("next") && Boolean.TRUE.equals(result))
+			{
+				state[0]++;
+			}
+			if(((name.equals("next") && Boolean.FALSE.equals(result)) || name.equals("close")) && state[1]++ == 0)
+			{
+				var elapsed = Duration.ofNanos(System.nanoTime() - start);
+				event.end();
+				if(event.shouldCommit())
+				{
+					event.sql = context.getSQL();
+					event.rows = state[0];
+					event.commit();
+				}
+				for(var interceptor : interceptors)
+				{
+					interceptor.onFetch(context, state[0], elapsed);
+				}
+			}
+			return result;
+		});
+	}
+	
+	private interface Handler
+	{
+		Object handle(Method method, Object[] args) throws Throwable;
+	}
+	
+	private static <T> T proxy(Class<T> type, Handler handler)
+	{
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> handler.handle(method, args)));
+	}
+	
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable
+	{
+		try
+		{
+			return method.invoke(target, args);
+		}
+		catch(InvocationTargetException e)
+		{
+			throw e.getCause();
+		}
+	}
+}
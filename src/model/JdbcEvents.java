@@ -0,0 +1,97 @@
+package model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder events for each phase of the JDBC work done through a
+ * {@link Database}. They cost next to nothing unless a recording enables them.
+ */
+final class JdbcEvents
+{
+	private JdbcEvents()
+	{
+	}
+	
+	static boolean enabled()
+	{
+		return EventType.getEventType(ConnectEvent.class).isEnabled()
+			|| EventType.getEventType(PrepareEvent.class).isEnabled()
+			|| EventType.getEventType(BindEvent.class).isEnabled()
+			|| EventType.getEventType(ExecuteEvent.class).isEnabled()
+			|| EventType.getEventType(FetchEvent.class).isEnabled()
+			|| EventType.getEventType(CommitEvent.class).isEnabled();
+	}
+	
+	@Name("model.Connect")
+	@Label("Connect")
+	@Category({"Java ORM", "JDBC"})
+	static class ConnectEvent extends Event
+	{
+		@Label("URL")
+		String url;
+	}
+	
+	@Name("model.Prepare")
+	@Label("Prepare Statement")
+	@Category({"Java ORM", "JDBC"})
+	static class PrepareEvent extends Event
+	{
+		@Label("SQL")
+		String sql;
+	}
+	
+	@Name("model.Bind")
+	@Label("Bind Parameter")
+	@Category({"Java ORM", "JDBC"})
+	static class BindEvent extends Event
+	{
+		@Label("SQL")
+		String sql;
+		
+		@Label("Index")
+		int index;
+	}
+	
+	@Name("model.Execute")
+	@Label("Execute Statement")
+	@Category({"Java ORM", "JDBC"})
+	static class ExecuteEvent extends Event
+	{
+		@Label("SQL")
+		String sql;
+		
+		@Label("Parameters")
+		int parameters;
+		
+		@Label("Failed")
+		boolean failed;
+	}
+	
+	@Name("model.Fetch")
+	@Label("Fetch Results")
+	@Category({"Java ORM", "JDBC"})
+	static class FetchEvent extends Event
+	{
+		@Label("SQL")
+		String sql;
+		
+		@Label("Rows")
+		int rows;
+	}
+	
+	@Name("model.Commit")
+	@Label("Commit")
+	@Category({"Java ORM", "JDBC"})
+	static class CommitEvent extends Event
+	{
+		@Label("URL")
+		String url;
+		
+		@Label("Failed")
+		boolean failed;
+	}
+}
@@ -0,0 +1,73 @@
+package model;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A base row together with the rows of each joined table that matched it.
+ * One-to-many joins are collapsed, so the base row appears once with all of
+ * its distinct children.
+ */
+public class JoinedRow
+{
+	private final Table row;
+	private final Map<String, List<Table>> joined;
+	private final Map<String, Map<Key, Table>> seen;
+	
+	JoinedRow(Table row)
+	{
+		this.row = row;
+		joined = new LinkedHashMap<String, List<Table>>();
+		seen = new LinkedHashMap<String, Map<Key, Table>>();
+	}
+	
+	public Table getRow()
+	{
+		return row;
+	}
+	
+	public List<Table> getJoined(String tableName)
+	{
+		return Collections.unmodifiableList(joined.getOrDefault(tableName, List.of()));
+	}
+	
+	public List<Table> getJoined(Table table)
+	{
+		return getJoined(table.getName());
+	}
+	
+	public Optional<Table> getFirstJoined(String tableName)
+	{
+		return getJoined(tableName).stream().findFirst();
+	}
+	
+	public Map<String, List<Table>> getJoined()
+	{
+		return Collections.unmodifiableMap(joined);
+	}
+	
+	void add(Table child)
+	{
+		var rows = joined.computeIfAbsent(child.getName(), name -> new LinkedList<Table>());
+		if(child.getPrimaryKeys().length == 0)
+		{
+			rows.add(child);
+			return;
+		}
+		
+		var key = Key.of(child.getPrimaryKeys());
+		if(seen.computeIfAbsent(child.getName(), name -> new LinkedHashMap<Key, Table>()).putIfAbsent(key, child) == null)
+		{
+			rows.add(child);
+		}
+	}
+	
+	void declare(String tableName)
+	{
+		joined.computeIfAbsent(tableName, name -> new LinkedList<Table>());
+	}
+}
@@ -0,0 +1,70 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * A hashable tuple of column values, equal to another when every value is
+ * equal by {@link Values#equal}, so keys read back from the database match the
+ * keys held by rows regardless of the driver's boxed types.
+ */
+final class Key
+{
+	private final Object[] values;
+	private final int hash;
+	
+	Key(Object... values)
+	{
+		this.values = values;
+		var hash = 1;
+		for(var value : values)
+		{
+			hash = 31 * hash + Values.hash(value);
+		}
+		this.hash = hash;
+	}
+	
+	static Key of(Column<?>[] columns)
+	{
+		return new Key(Arrays.stream(columns).map(Column::getValue).toArray());
+	}
+	
+	Object[] getValues()
+	{
+		return values;
+	}
+	
+	@Override
+	public int hashCode()
+	{
+		return hash;
+	}
+	
+	@Override
+	public boolean equals(Object other)
+	{
+		if(!(other instanceof Key))
+		{
+			return false;
+		}
+		
+		var otherKey = (Key) other;
+		if(otherKey.values.length != values.length)
+		{
+			return false;
+		}
+		for(var i = 0; i < values.length; i++)
+		{
+			if(!Values.equal(values[i], otherKey.values[i]))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return Arrays.toString(values);
+	}
+}
@@ -0,0 +1,174 @@
+package model;
+
+import java.io.Serializable;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Iterates over a query's results in primary key order one page at a time,
+ * each page starting after the last key of the one before. A checkpoint of
+ * the last row returned can be saved and passed to
+ * {@link Query#scan(int, Checkpoint)} to carry on from there later.
+ */
+public class KeysetScanner implements Iterator<Table>, AutoCloseable
+{
+	public static final class Checkpoint implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final String tableName;
+		private final Object[] key;
+		
+		Checkpoint(String tableName, Object[] key)
+		{
+			this.tableName = tableName;
+			this.key = key;
+		}
+		
+		public String getTableName()
+		{
+			return tableName;
+		}
+		
+		/**
+		 * The primary key values of the last row returned, or null if the
+		 * scan had not returned any.
+		 */
+		public Object[] getKey()
+		{
+			return key == null ? null : key.clone();
+		}
+		
+		@Override
+		public String toString()
+		{
+			return String.format("%s after %s", tableName, Arrays.toString(key));
+		}
+	}
+	
+	private final Query query;
+	private final String tableName;
+	private final int batchSize;
+	private boolean prefetch;
+	private Iterator<Table> page;
+	private Object[] fetchedUpTo;
+	private Object[] returnedUpTo;
+	private boolean exhausted;
+	private CompletableFuture<List<Table>> next;
+	
+	KeysetScanner(Query query, String tableName, int batchSize, Object[] after)
+	{
+		this.query = query;
+		this.tableName = tableName;
+		this.batchSize = batchSize;
+		fetchedUpTo = after;
+		returnedUpTo = after;
+	}
+	
+	/**
+	 * Fetches the next page on a background thread while the current one is
+	 * being consumed.
+	 */
+	public KeysetScanner prefetch(boolean b)
+	{
+		prefetch = b;
+		return this;
+	}
+	
+	@Override
+	public boolean hasNext()
+	{
+		while(page == null || !page.hasNext())
+		{
+			if(exhausted)
+			{
+				return false;
+			}
+			
+			List<Table> rows;
+			try
+			{
+				rows = next != null ? next.get() : query.page(fetchedUpTo, batchSize);
+			}
+			catch(SQLException e)
+			{
+				throw new RuntimeException(e.getMessage(), e);
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e.getMessage(), e);
+			}
+			catch(ExecutionException e)
+			{
+				throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+			}
+			next = null;
+			
+			exhausted = rows.size() < batchSize;
+			if(!rows.isEmpty())
+			{
+				fetchedUpTo = key(rows.get(rows.size() - 1));
+			}
+			if(prefetch && !exhausted)
+			{
+				var after = fetchedUpTo;
+				next = CompletableFuture.supplyAsync(QueryDetector.propagate(() -> {
+					try
+					{
+						return query.page(after, batchSize);
+					}
+					catch(SQLException e)
+					{
+						throw new CompletionException(e);
+					}
+				}), Workers.POOL);
+			}
+			
+			page = rows.iterator();
+		}
+		
+		return true;
+	}
+	
+	@Override
+	public Table next()
+	{
+		if(!hasNext())
+		{
+			throw new NoSuchElementException();
+		}
+		
+		var row = page.next();
+		returnedUpTo = key(row);
+		return row;
+	}
+	
+	public Checkpoint getCheckpoint()
+	{
+		return new Checkpoint(tableName, returnedUpTo == null ? null : returnedUpTo.clone());
+	}
+	
+	@Override
+	public void close()
+	{
+		if(next != null)
+		{
+			next.cancel(true);
+			next = null;
+		}
+		exhausted = true;
+		page = null;
+	}
+	
+	private static Object[] key(Table row)
+	{
+		return Arrays.stream(row.getPrimaryKeys()).map(Column::getValue).toArray();
+	}
+}
@@ -0,0 +1,83 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps recent latencies per statement shape. Repeated placeholder lists,
+ * such as IN lists of any length, share one shape, and only the most
+ * recently used shapes are kept.
+ */
+class LatencyTracker
+{
+	private static final int SAMPLES = 256;
+	private static final int MINIMUM_SAMPLES = 20;
+	private static final int MAX_SHAPES = 1000;
+	private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\?(\\s*,\\s*\\?)+");
+	private static final Pattern REPEATED_GROUP = Pattern.compile("(\\([^()]*\\))(\\s+OR\\s+\\1)+");
+	
+	private final Map<String, Window> windows = Collections.synchronizedMap(new LinkedHashMap<String, Window>(16, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Window> eldest)
+		{
+			return size() > MAX_SHAPES;
+		}
+	});
+	
+	public void record(String sql, long nanos)
+	{
+		windows.computeIfAbsent(shape(sql), k -> new Window()).record(nanos);
+	}
+	
+	private static String shape(String sql)
+	{
+		var shape = PLACEHOLDER_LIST.matcher(sql).replaceAll("?...");
+		return REPEATED_GROUP.matcher(shape).replaceAll("$1 OR ...");
+	}
+	
+	/**
+	 * Returns the requested percentile of the recent latencies of the given
+	 * statement's shape in nanoseconds, or -1 if too few executions have been seen yet.
+	 */
+	public long percentile(String sql, double percentile)
+	{
+		var window = windows.get(shape(sql));
+		if(window == null)
+		{
+			return -1;
+		}
+		
+		return window.percentile(percentile);
+	}
+	
+	private static class Window
+	{
+		private final long[] samples = new long[SAMPLES];
+		private int count;
+		private int next;
+		
+		public synchronized void record(long nanos)
+		{
+			samples[next] = nanos;
+			next = (next + 1) % SAMPLES;
+			count = Math.min(count + 1, SAMPLES);
+		}
+		
+		public synchronized long percentile(double percentile)
+		{
+			if(count < MINIMUM_SAMPLES)
+			{
+				return -1;
+			}
+			
+			var sorted = Arrays.copyOf(samples, count);
+			Arrays.sort(sorted);
+			var index = (int) Math.ceil(percentile * count) - 1;
+			return sorted[Math.max(0, Math.min(index, count - 1))];
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package model;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Loads lazy columns for the rows of one query result that still need them,
+ * the first time any of those rows reads the column. The row being read is
+ * loaded together with the unloaded rows registered after it, up to one
+ * batch. Rows leave the loader once every deferred column is loaded, and a
+ * windowed loader only remembers the most recently registered rows, so
+ * streamed results are not retained.
+ */
+class LazyLoader
+{
+	private static final int BATCH_SIZE = 500;
+	
+	private final Database database;
+	private final int window;
+	private final ArrayDeque<Table> rows;
+	
+	public LazyLoader(Database database)
+	{
+		this(database, 0);
+	}
+	
+	private LazyLoader(Database database, int window)
+	{
+		this.database = database;
+		this.window = window;
+		rows = new ArrayDeque<Table>();
+	}
+	
+	/**
+	 * Returns a loader for streamed results that remembers at most one batch
+	 * of recent rows. Older rows still load their columns when read, just not
+	 * together with rows that have since gone by.
+	 */
+	public static LazyLoader windowed(Database database)
+	{
+		return new LazyLoader(database, BATCH_SIZE);
+	}
+	
+	public synchronized void register(Table row)
+	{
+		rows.addLast(row);
+		if(window > 0 && rows.size() > window)
+		{
+			rows.removeFirst();
+		}
+	}
+	
+	public synchronized void load(Table requester, String columnName) throws SQLException
+	{
+		var pending = new ArrayList<Table>();
+		pending.add(requester);
+		var following = rows.stream().noneMatch(r -> r == requester);
+		for(var row : rows)
+		{
+			if(pending.size() == BATCH_SIZE)
+			{
+				break;
+			}
+			if(row == requester)
+			{
+				following = true;
+			}
+			else if(following && row.isUnloaded(columnName))
+			{
+				pending.add(row);
+			}
+		}
+		
+		var byShard = new LinkedHashMap<Database, List<Table>>();
+		for(var row : pending)
+		{
+			byShard.computeIfAbsent(database.route(row), k -> new ArrayList<Table>()).add(row);
+		}
+		
+		for(var entry : byShard.entrySet())
+		{
+			load(entry.getKey(), columnName, entry.getValue());
+		}
+		
+		rows.removeIf(Table::isLoaded);
+	}
+	
+	private void load(Database shard, String columnName, List<Table> batch) throws SQLException
+	{
+		var primaryKeys = batch.get(0).getPrimaryKeys();
+		var column = batch.get(0).getColumn(columnName);
+		var keyNames = String.join(", ", Arrays.stream(primaryKeys).map(Column::getName).toArray(String[]::new));
+		String condition;
+		if(primaryKeys.length == 1)
+		{
+			condition = String.format("%s IN (%s)", keyNames, String.join(", ", Collections.nCopies(batch.size(), "?")));
+		}
+		else
+		{
+			var rowCondition = String.format("(%s)", String.join(" AND ", 
+					Arrays.stream(primaryKeys).map(k -> k.getName() + " = ?").toArray(String[]::new)));
+			condition = String.join(" OR ", Collections.nCopies(batch.size(), rowCondition));
+		}
+		
+		var sql = String.format("SELECT %s, %s FROM %s WHERE %s", keyNames, columnName, batch.get(0).getName(), condition);
+		var byKey = new HashMap<Key, Table>();
+		
+		try(var connection = shard.getConnection())
+		{
+			var statement = connection.prepareStatement(sql);
+			var index = 1;
+			for(var row : batch)
+			{
+				for(var primaryKey : row.getPrimaryKeys())
+				{
+					primaryKey.bind(statement, index++);
+				}
+				byKey.put(Key.of(row.getPrimaryKeys()), row);
+			}
+			
+			var resultSet = statement.executeQuery();
+			while(resultSet.next())
+			{
+				var keyValues = new Object[primaryKeys.length];
+				for(var i = 0; i < keyValues.length; i++)
+				{
+					keyValues[i] = primaryKeys[i].read(resultSet, i + 1);
+				}
+				
+				var row = byKey.remove(new Key(keyValues));
+				if(row != null && row.isUnloaded(columnName))
+				{
+					row.setLoadedValue(columnName, column.read(resultSet, primaryKeys.length + 1));
+				}
+			}
+		}
+		
+		for(var missing : byKey.values())
+		{
+			if(missing.isUnloaded(columnName))
+			{
+				missing.setLoadedValue(columnName, null);
+			}
+		}
+	}
+}
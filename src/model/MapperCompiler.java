@@ -0,0 +1,180 @@
+package model;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+final class MapperCompiler
+{
+	private static final ClassValue<Map<String, RowMapper<?>>> mappers = new ClassValue<Map<String, RowMapper<?>>>()
+	{
+		@Override
+		protected Map<String, RowMapper<?>> computeValue(Class<?> type)
+		{
+			return new ConcurrentHashMap<String, RowMapper<?>>();
+		}
+	};
+	static final Map<Class<?>, String> GETTERS = Map.ofEntries
+	(
+			Map.entry(int.class, "getInt"),
+			Map.entry(long.class, "getLong"),
+			Map.entry(double.class, "getDouble"),
+			Map.entry(float.class, "getFloat"),
+			Map.entry(short.class, "getShort"),
+			Map.entry(byte.class, "getByte"),
+			Map.entry(boolean.class, "getBoolean"),
+			Map.entry(String.class, "getString"),
+			Map.entry(BigDecimal.class, "getBigDecimal"),
+			Map.entry(byte[].class, "getBytes"),
+			Map.entry(Date.class, "getDate"),
+			Map.entry(Time.class, "getTime"),
+			Map.entry(Timestamp.class, "getTimestamp")
+	);
+	
+	private MapperCompiler()
+	{
+	}
+	
+	@SuppressWarnings("unchecked")
+	static <T> RowMapper<T> compile(Class<T> type, Column<?>... projection)
+	{
+		var key = String.join(",", Arrays.stream(projection).map(Column::getName).toArray(String[]::new));
+		return (RowMapper<T>) mappers.get(type).computeIfAbsent(key, k -> {
+			try
+			{
+				var lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+				var handle = (type.isRecord() ? compileRecord(lookup, type, projection) : compileBean(lookup, type, projection))
+								.asType(MethodType.methodType(Object.class, ResultSet.class));
+				return resultSet -> {
+					try
+					{
+						return (T) (Object) handle.invokeExact(resultSet);
+					}
+					catch(SQLException | RuntimeException | Error e)
+					{
+						throw e;
+					}
+					catch(Throwable e)
+					{
+						throw new SQLException(e);
+					}
+				};
+			}
+			catch(ReflectiveOperationException e)
+			{
+				throw new IllegalArgumentException(String.format("Cannot map rows into %s: %s", type.getName(), e.getMessage()), e);
+			}
+		});
+	}
+	
+	private static MethodHandle compileRecord(MethodHandles.Lookup lookup, Class<?> type, Column<?>[] projection) throws ReflectiveOperationException
+	{
+		var components = type.getRecordComponents();
+		var componentTypes = Arrays.stream(components).map(c -> c.getType()).toArray(Class[]::new);
+		var constructor = lookup.findConstructor(type, MethodType.methodType(void.class, componentTypes));
+		var positions = positions(projection);
+		var readers = new MethodHandle[components.length];
+		
+		for(var i = 0; i < components.length; i++)
+		{
+			var position = positions.get(normalize(components[i].getName()));
+			readers[i] = position == null ? MethodHandles.dropArguments(MethodHandles.zero(componentTypes[i]), 0, ResultSet.class)
+										  : reader(lookup, position, componentTypes[i]);
+		}
+		
+		var handle = MethodHandles.filterArguments(constructor, 0, readers);
+		return MethodHandles.permuteArguments(handle, MethodType.methodType(type, ResultSet.class), new int[components.length]);
+	}
+	
+	private static MethodHandle compileBean(MethodHandles.Lookup lookup, Class<?> type, Column<?>[] projection) throws ReflectiveOperationException
+	{
+		var handle = MethodHandles.dropArguments(MethodHandles.identity(type), 1, ResultSet.class);
+		var setters = setters(lookup, type);
+		
+		for(var i = 0; i < projection.length; i++)
+		{
+			var setter = setters.get(normalize(projection[i].getName()));
+			if(setter == null)
+			{
+				continue;
+			}
+			
+			var valueType = setter.type().parameterType(1);
+			var assignment = MethodHandles.filterArguments(setter, 1, reader(lookup, i + 1, valueType));
+			handle = MethodHandles.foldArguments(handle, assignment);
+		}
+		
+		var constructor = lookup.findConstructor(type, MethodType.methodType(void.class));
+		return MethodHandles.foldArguments(handle, constructor);
+	}
+	
+	private static Map<String, MethodHandle> setters(MethodHandles.Lookup lookup, Class<?> type) throws IllegalAccessException
+	{
+		var setters = new HashMap<String, MethodHandle>();
+		
+		for(var current = type; current != null && current != Object.class; current = current.getSuperclass())
+		{
+			for(var field : current.getDeclaredFields())
+			{
+				if(!Modifier.isStatic(field.getModifiers()) && !Modifier.isFinal(field.getModifiers()))
+				{
+					setters.putIfAbsent(normalize(field.getName()), MethodHandles.privateLookupIn(current, lookup).unreflectSetter(field)
+							.asType(MethodType.methodType(void.class, type, field.getType())));
+				}
+			}
+		}
+		
+		for(var method : type.getMethods())
+		{
+			if(method.getName().startsWith("set") && method.getParameterCount() == 1
+			&& !Modifier.isStatic(method.getModifiers()) && method.getReturnType() == void.class)
+			{
+				setters.put(normalize(method.getName().substring(3)), lookup.unreflect(method).asType(
+						MethodType.methodType(void.class, type, method.getParameterTypes()[0])));
+			}
+		}
+		
+		return setters;
+	}
+	
+	private static MethodHandle reader(MethodHandles.Lookup lookup, int position, Class<?> valueType) throws ReflectiveOperationException
+	{
+		var getter = GETTERS.get(valueType);
+		if(getter != null)
+		{
+			var handle = lookup.findVirtual(ResultSet.class, getter, MethodType.methodType(valueType, int.class));
+			return MethodHandles.insertArguments(handle, 1, position);
+		}
+		
+		var handle = lookup.findVirtual(ResultSet.class, "getObject", MethodType.methodType(Object.class, int.class, Class.class));
+		return MethodHandles.insertArguments(handle, 1, position, valueType)
+							.asType(MethodType.methodType(valueType, ResultSet.class));
+	}
+	
+	private static Map<String, Integer> positions(Column<?>[] projection)
+	{
+		var positions = new HashMap<String, Integer>();
+		for(var i = 0; i < projection.length; i++)
+		{
+			positions.putIfAbsent(normalize(projection[i].getName()), i + 1);
+		}
+		
+		return positions;
+	}
+	
+	private static String normalize(String name)
+	{
+		return name.replace("_", "").toLowerCase();
+	}
+}
@@ -1,34 +1,106 @@
 package model;
 
-import java.lang.reflect.InvocationTargetException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import model.Filter.FilterType;
 import model.Filter.RelationType;
 
 public class Query
 {
+	private static final System.Logger LOGGER = System.getLogger(Query.class.getName());
+	private static final double HEDGE_PERCENTILE = 0.95;
+	private static final int STREAM_FETCH_SIZE = 500;
+	private static final LatencyTracker LATENCIES = new LatencyTracker();
+	private static final AtomicInteger hedgeCounter = new AtomicInteger();
+	private static final Map<Class<?>, MethodHandle> constructors = new ConcurrentHashMap<Class<?>, MethodHandle>();
+	private static final Set<Integer> INTEGRAL_TYPES = Set.of(Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT);
+	
 	private final Table model;
 	private final Column<?>[] modelColumns;
+	private final Column<?>[] selectedColumns;
+	private final int[] selected;
+	private final List<String> deferredNames;
 	private List<Filter> filters;
+	private List<FilterExpression> expressions;
 	private Map<String, Join> joins;
+	private List<Pair<Column<?>, Boolean>> ordering;
 	private final Database database;
+	private Duration timeout;
+	private boolean hedge;
+	private boolean local;
+	private ResultCache cache;
+	private int limit;
+	private Column<?> versionColumn;
 	
 	public static <T extends Table> Query query(Database database, Class<T> tableClass)
 	{
 		try
 		{
-			return new Query(database, tableClass.getConstructor().newInstance());
-		} catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException
-				| NoSuchMethodException | SecurityException e)
+			var constructor = constructors.computeIfAbsent(tableClass, k -> {
+				try
+				{
+					return MethodHandles.publicLookup().findConstructor(k, MethodType.methodType(void.class))
+									  .asType(MethodType.methodType(Table.class));
+				}
+				catch(NoSuchMethodException | IllegalAccessException e)
+				{
+					throw new RuntimeException(e.getMessage());
+				}
+			});
+			return new Query(database, (Table) constructor.invokeExact());
+		}
+		catch(RuntimeException | Error e)
+		{
+			throw e;
+		}
+		catch(Throwable e)
 		{
 			throw new RuntimeException(e.getMessage());
 		}
@@ -37,10 +109,23 @@ public class Query
 	public Query(Database database, Table model)
 	{
 		filters 		= new LinkedList<Filter>();
+		expressions		= new LinkedList<FilterExpression>();
+		local			= true;
 		joins			= new HashMap<String, Join>();
+		ordering		= new LinkedList<Pair<Column<?>, Boolean>>();
 		this.model 		= Objects.requireNonNull(model);
 		this.database 	= Objects.requireNonNull(database);
 		modelColumns 	= model.getColumns();
+		
+		var canDefer = model.getPrimaryKeys().length > 0;
+		selected 		= IntStream.range(0, modelColumns.length)
+								   .filter(i -> !canDefer || !modelColumns[i].isLazy())
+								   .toArray();
+		selectedColumns = Arrays.stream(selected).mapToObj(i -> modelColumns[i]).toArray(Column[]::new);
+		deferredNames	= Arrays.stream(modelColumns)
+								.filter(c -> canDefer && c.isLazy())
+								.map(Column::getName)
+								.collect(Collectors.toList());
 	}
 	
 	public <F extends Comparable<F>> Query filter(Column<F> column, F value)
@@ -94,6 +179,34 @@ public class Query
 		return this;
 	}
 	
+	public Query filter(FilterExpression expression)
+	{
+		expressions.add(Objects.requireNonNull(expression));
+		return this;
+	}
+	
+	/**
+	 * Returns every filter of this query combined into one expression, or
+	 * null if the query is unfiltered.
+	 */
+	public FilterExpression getFilterExpression()
+	{
+		var all = Stream.concat(filters.stream().map(FilterExpression::of), expressions.stream())
+						.toArray(FilterExpression[]::new);
+		
+		return all.length == 0 ? null : FilterExpression.and(all);
+	}
+	
+	/**
+	 * Evaluates this query's filters against a row in memory. Joins are not
+	 * taken into account.
+	 */
+	public boolean matches(Table row)
+	{
+		var expression = getFilterExpression();
+		return expression == null || expression.test(row);
+	}
+	
 	public Query join(Join join)
 	{
 		var key = Objects.requireNonNull(join).getTable().getName();
@@ -120,101 +233,1447 @@ public class Query
 		return join(j);
 	}
 	
+	public Query orderBy(Column<?> column)
+	{
+		return orderBy(column, false);
+	}
+	
+	public Query orderBy(Column<?> column, boolean descending)
+	{
+		ordering.add(Pair.of(Objects.requireNonNull(column), descending));
+		return this;
+	}
+	
 	public String toString()
 	{
-		var sqlString = String.format("SELECT * from %s", model.getName());
+		return ordered(generateSQL(selectList()));
+	}
+	
+	private String ordered(String sqlString)
+	{
+		if(!ordering.isEmpty())
+		{
+			sqlString += String.format("\nORDER BY %s", String.join(", ", 
+					ordering.stream().map(o -> o.getFirst().getName() + (o.getSecond() ? " DESC" : "")).toArray(String[]::new)));
+		}
+		if(limit > 0)
+		{
+			sqlString += database.getDialect().generateLimitClause();
+		}
+		
+		return sqlString;
+	}
+	
+	private String selectList()
+	{
+		if(deferredNames.isEmpty())
+		{
+			return "*";
+		}
+		
+		return String.join(", ", Arrays.stream(selectedColumns)
+									   .map(c -> String.format("%s.%s", model.getName(), c.getName()))
+									   .toArray(String[]::new));
+	}
+	
+	private String generateSQL(String selection)
+	{
+		var sqlString = String.format("SELECT %s from %s", selection, model.getName());
 		for(var key : joins.keySet())
 		{
 			sqlString += String.format("\nJOIN %s", joins.get(key));
 		}
 		
-		if(!filters.isEmpty())
+		if(!filters.isEmpty() || !expressions.isEmpty())
 		{
 			sqlString += "\nWHERE ";
 			
 			sqlString += String.join(" AND ", 
-					filters.stream().map(Filter::toString).toArray(String[]::new));
+					Stream.concat(filters.stream().map(Filter::toString), expressions.stream().map(e -> String.format("(%s)", e)))
+						  .toArray(String[]::new));
 		}
 		
 		return sqlString;
 	}
 	
+	public Query timeout(Duration timeout)
+	{
+		if(timeout != null && (timeout.isNegative() || timeout.isZero()))
+		{
+			throw new IllegalArgumentException("Timeout must be positive");
+		}
+		
+		this.timeout = timeout;
+		return this;
+	}
+	
+	public Query hedge(boolean b)
+	{
+		hedge = b;
+		return this;
+	}
+	
+	/**
+	 * Serves {@link #all()} from the on-disk cache while the row count and
+	 * the maximum of the version column for this query's filters stay the
+	 * same; otherwise the query runs and its results replace the cached ones.
+	 * Both are checked in one probe query, which is skipped within the
+	 * cache's probe interval.
+	 */
+	public Query cache(ResultCache cache, Column<?> versionColumn)
+	{
+		this.cache = cache;
+		this.versionColumn = cache == null ? null : Objects.requireNonNull(versionColumn);
+		return this;
+	}
+	
 	public Optional<Table> first() throws SQLException
 	{
-		var sqlString = toString();
+		var local = local(1);
+		if(local != null)
+		{
+			return local.stream().findFirst();
+		}
+		
+		return first(rowMapper());
+	}
+	
+	public List<Table> all() throws SQLException
+	{
+		var local = local(0);
+		if(local != null)
+		{
+			return local;
+		}
 		
-		try(var connection = database.getConnection())
+		if(cache != null)
 		{
-			var statement = connection.prepareStatement(sqlString);
-			statement.setMaxRows(1);
-			fillStatement(statement);
+			return cached();
+		}
+		
+		return execute(0, rowMapper());
+	}
+	
+	private List<Table> cached() throws SQLException
+	{
+		var key = ResultCache.key(toString(), parameters(), selectedColumns);
+		var probe = cache.recentProbe(key);
+		if(probe == null)
+		{
+			var values = new ArrayList<Object>();
+			for(var row : aggregateRows(generateSQL(String.format("COUNT(*), MAX(%s)", versionColumn.getName()))))
+			{
+				values.addAll(Arrays.asList(row));
+			}
+			probe = values.toArray();
+			cache.probed(key, probe);
+		}
+		
+		List<Object[]> rows = null;
+		try
+		{
+			rows = cache.get(key, probe);
+		}
+		catch(IOException e)
+		{
+			LOGGER.log(System.Logger.Level.WARNING, "Could not read cached query results", e);
+		}
+		
+		if(rows == null)
+		{
+			rows = execute(0, this::readValues);
+			try
+			{
+				cache.put(key, probe, selected.length, rows);
+			}
+			catch(IOException e)
+			{
+				LOGGER.log(System.Logger.Level.WARNING, "Could not cache query results", e);
+			}
+		}
+		
+		var loader = deferredNames.isEmpty() ? null : new LazyLoader(database);
+		var results = new ArrayList<Table>(rows.size());
+		for(var values : rows)
+		{
+			results.add(createRow(values, loader));
+		}
+		return results;
+	}
+	
+	/**
+	 * Returns the values bound to this query's parameters, in order.
+	 */
+	private List<Object> parameters()
+	{
+		var parameters = new ArrayList<Object>();
+		for(var join : joins.values())
+		{
+			for(var filter : join.getValueFilters())
+			{
+				filter.getColumns().forEach(c -> parameters.add(c.getValue()));
+			}
+		}
+		for(var filter : filters)
+		{
+			filter.getColumns().forEach(c -> parameters.add(c.getValue()));
+		}
+		for(var expression : expressions)
+		{
+			parameters.addAll(expression.getParameters());
+		}
+		if(limit > 0)
+		{
+			parameters.add(limit);
+		}
+		return parameters;
+	}
+	
+	/**
+	 * Returns every result while holding at most about memoryBudget bytes of
+	 * rows on the heap; the remainder is spilled to a temporary file that is
+	 * removed when the list is closed.
+	 */
+	public SpillingList<Table> all(long memoryBudget) throws SQLException
+	{
+		var loader = deferredNames.isEmpty() ? null : LazyLoader.windowed(database);
+		var results = new SpillingList<Table>(memoryBudget, selected.length, values -> createRow(values, loader));
+		
+		try(var rows = stream(this::readValues))
+		{
+			var rowIt = rows.iterator();
+			while(rowIt.hasNext())
+			{
+				results.append(rowIt.next());
+			}
+			results.finish();
+		}
+		catch(IOException | RuntimeException e)
+		{
+			try
+			{
+				results.close();
+			}
+			catch(IOException ignored)
+			{
+			}
 			
-			var resultSet = statement.executeQuery();
-			if(!resultSet.next())
+			if(e instanceof IOException)
 			{
-				return Optional.empty();
+				throw new SQLException("Could not spill query results", e);
 			}
-			return Optional.of(generateRow(resultSet));
+			throw (RuntimeException) e;
 		}
+		
+		return results;
 	}
 	
-	public List<Table> all() throws SQLException
+	public <T> Optional<T> first(Class<T> type) throws SQLException
 	{
-		var results = new LinkedList<Table>();
+		return first(RowMapper.of(type, selectedColumns));
+	}
+	
+	public <T> List<T> all(Class<T> type) throws SQLException
+	{
+		return execute(0, RowMapper.of(type, selectedColumns));
+	}
+	
+	public <T> Optional<T> first(RowMapper<T> mapper) throws SQLException
+	{
+		var results = execute(1, mapper);
+		if(results.isEmpty())
+		{
+			return Optional.empty();
+		}
+		return Optional.of(results.get(0));
+	}
+	
+	public <T> List<T> all(RowMapper<T> mapper) throws SQLException
+	{
+		return execute(0, mapper);
+	}
+	
+	/**
+	 * Runs the query with every joined table's columns selected and returns
+	 * each base row with its joined rows. Results sharing a base primary key
+	 * are collapsed into one entry, and repeated joined rows are dropped.
+	 */
+	public List<JoinedRow> allJoined() throws SQLException
+	{
+		var joined = joins.values().stream().map(Join::getTable).toArray(Table[]::new);
+		var selection = Stream.concat(
+				Arrays.stream(selectedColumns).map(c -> String.format("%s.%s", model.getName(), c.getName())),
+				Arrays.stream(joined).flatMap(t -> Arrays.stream(t.getColumns()).map(c -> String.format("%s.%s", t.getName(), c.getName()))))
+							  .toArray(String[]::new);
 		
-		var sqlString = toString();
+		var loader = deferredNames.isEmpty() ? null : new LazyLoader(database);
+		var rows = execute(ordered(generateSQL(String.join(", ", selection))), 0, results -> {
+			var base = generateRow(results, loader);
+			var children = new Table[joined.length];
+			var index = selected.length + 1;
+			for(var i = 0; i < joined.length; i++)
+			{
+				children[i] = joinedRow(results, joined[i], index);
+				index += joined[i].getColumns().length;
+			}
+			return Pair.of(base, children);
+		});
 		
-		try(var connection = database.getConnection())
+		var collapsed = new LinkedHashMap<Object, JoinedRow>();
+		for(var row : rows)
 		{
-			var statement = connection.prepareStatement(sqlString);
-			fillStatement(statement);
-			
-			var resultSet = statement.executeQuery();
-			while(resultSet.next())
+			var base = row.getFirst();
+			var key = model.getPrimaryKeys().length == 0 ? new Object() : Key.of(base.getPrimaryKeys());
+			var result = collapsed.computeIfAbsent(key, k -> new JoinedRow(base));
+			for(var i = 0; i < joined.length; i++)
 			{
-				results.add(generateRow(resultSet));
+				result.declare(joined[i].getName());
+				if(row.getSecond()[i] != null)
+				{
+					result.add(row.getSecond()[i]);
+				}
 			}
 		}
 		
+		return new ArrayList<JoinedRow>(collapsed.values());
+	}
+	
+	private static Table joinedRow(ResultSet results, Table table, int index) throws SQLException
+	{
+		var columns = new Column<?>[table.getColumns().length];
+		var empty = true;
+		for(var i = 0; i < columns.length; i++)
+		{
+			var value = table.getColumns()[i].read(results, index + i);
+			empty &= value == null;
+			columns[i] = table.getColumns()[i].cloneWithValue(value);
+		}
+		
+		if(empty)
+		{
+			return null;
+		}
 		
-		return results;
+		var row = new Table(table.getName(), columns);
+		row.setInDatabase(true);
+		return row;
 	}
 	
-	private void fillStatement(PreparedStatement s) throws SQLException
+	public Stream<Table> stream() throws SQLException
 	{
-		var index = 1;
+		var local = local(0);
+		if(local != null)
+		{
+			return local.stream();
+		}
 		
-		for(var entry : joins.entrySet())
+		return stream(streamingRowMapper());
+	}
+	
+	public <T> Stream<T> stream(RowMapper<T> mapper) throws SQLException
+	{
+		return stream(mapper, resultSet -> {});
+	}
+	
+	/**
+	 * Publishes the results to a single subscriber, reading rows from the
+	 * database only as the subscriber requests them. The connection is
+	 * opened on the first request and closed on completion, error or
+	 * cancellation.
+	 */
+	public Flow.Publisher<Table> publish()
+	{
+		var local = local(0);
+		if(local != null)
 		{
-			for(var filter : entry.getValue().getValueFilters())
+			return new QueryPublisher<Table>(onOpen -> local.stream());
+		}
+		
+		return publish(streamingRowMapper());
+	}
+	
+	public <T> Flow.Publisher<T> publish(RowMapper<T> mapper)
+	{
+		return new QueryPublisher<T>(onOpen -> stream(mapper, onOpen));
+	}
+	
+	private <T> Stream<T> stream(RowMapper<T> mapper, Consumer<ResultSet> onOpen) throws SQLException
+	{
+		return stream(toString(), mapper, onOpen);
+	}
+	
+	private <T> Stream<T> stream(String sqlString, RowMapper<T> mapper, Consumer<ResultSet> onOpen) throws SQLException
+	{
+		var targets = targets();
+		
+		if(targets.size() == 1)
+		{
+			return open(targets.get(0), sqlString, mapper, onOpen);
+		}
+		
+		if(ordering.isEmpty())
+		{
+			var streams = new ArrayList<Stream<T>>();
+			try
 			{
-				for(var column : filter.getColumns())
+				for(var target : targets)
 				{
-					s.setObject(index++, column.getValue());
+					streams.add(open(target, sqlString, mapper, onOpen));
 				}
 			}
+			catch(SQLException e)
+			{
+				streams.forEach(Stream::close);
+				throw e;
+			}
+			return streams.stream().reduce(Stream::concat).get();
 		}
-
-		for(var filter : filters)
+		
+		var streams = new ArrayList<Stream<Pair<Object[], T>>>();
+		try
 		{
-			for(var column : filter.getColumns())
+			for(var target : targets)
 			{
-				s.setObject(index++, column.getValue());
+				streams.add(open(target, sqlString, keyed(mapper), onOpen));
 			}
 		}
+		catch(SQLException e)
+		{
+			streams.forEach(Stream::close);
+			throw e;
+		}
+		
+		var merged = merge(streams.stream().map(Stream::iterator).collect(Collectors.toList()), keyComparator());
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED | Spliterator.NONNULL), false)
+					.map(Pair::getSecond)
+					.onClose(() -> streams.forEach(Stream::close));
 	}
 	
-	private Table generateRow(ResultSet results) throws SQLException
+	public Stream<Table> parallelStream(int partitions) throws SQLException
 	{
-		var columns = new Column<?>[modelColumns.length];
-		for(var i = 0; i < columns.length; i++)
+		var bounds = partitionBounds(partitions);
+		if(bounds == null)
+		{
+			return stream();
+		}
+		if(bounds.length == 0)
 		{
-			columns[i] = modelColumns[i].cloneWithValue(results.getObject(i+1));
+			return Stream.empty();
 		}
 		
-		var row = new Table(model.getName(), columns);
-		row.setInDatabase(true);
-
-		return row;
+		var open = new ConcurrentLinkedQueue<Stream<Table>>();
+		return StreamSupport.stream(new PartitionSpliterator(model.getPrimaryKeys()[0], bounds, 0, bounds.length - 1, open), true)
+					.onClose(() -> open.forEach(Stream::close));
+	}
+	
+	/**
+	 * Splits the range of an integral single-column primary key into at most
+	 * the given number of partitions. Returns null if the query cannot be
+	 * partitioned, or no bounds if it has no rows.
+	 */
+	private long[] partitionBounds(int partitions) throws SQLException
+	{
+		if(partitions < 1)
+		{
+			throw new IllegalArgumentException("Must have at least one partition");
+		}
+		
+		var primaryKeys = model.getPrimaryKeys();
+		if(partitions == 1 || primaryKeys.length != 1 || !INTEGRAL_TYPES.contains(primaryKeys[0].getType()))
+		{
+			return null;
+		}
+		
+		var key = primaryKeys[0];
+		var lowest = aggregate(generateSQL(String.format("MIN(%s)", key.getName()))).stream()
+				.filter(Objects::nonNull)
+				.mapToLong(v -> ((Number) v).longValue())
+				.min();
+		var highest = aggregate(generateSQL(String.format("MAX(%s)", key.getName()))).stream()
+				.filter(Objects::nonNull)
+				.mapToLong(v -> ((Number) v).longValue())
+				.max();
+		
+		if(lowest.isEmpty())
+		{
+			return new long[0];
+		}
+		
+		var span = (double) highest.getAsLong() - lowest.getAsLong() + 1;
+		partitions = (int) Math.max(1, Math.min(partitions, span));
+		var bounds = new long[partitions + 1];
+		for(var i = 0; i < bounds.length; i++)
+		{
+			bounds[i] = lowest.getAsLong() + (long) (span * i / partitions);
+		}
+		
+		return bounds;
+	}
+	
+	/**
+	 * Writes every result, including lazy columns, to the file and returns
+	 * the number of rows written.
+	 */
+	public long exportTo(Path file, ExportFormat format) throws SQLException, IOException
+	{
+		var sqlString = ordered(generateSQL(String.join(", ", Arrays.stream(modelColumns)
+				.map(c -> String.format("%s.%s", model.getName(), c.getName()))
+				.toArray(String[]::new))));
+		
+		try(var exporter = new Exporter(file, format, modelColumns);
+			var rows = stream(sqlString, results -> {
+				var values = new Object[modelColumns.length];
+				for(var i = 0; i < values.length; i++)
+				{
+					values[i] = modelColumns[i].read(results, i + 1);
+				}
+				return values;
+			}, resultSet -> {}))
+		{
+			rows.forEach(values -> {
+				try
+				{
+					exporter.write(values);
+				}
+				catch(IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			});
+			return exporter.getRows();
+		}
+		catch(UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+	}
+	
+	/**
+	 * Exports the results into one file per partition of the primary key,
+	 * written in parallel into the directory as part-00000.csv and so on.
+	 * Queries that cannot be partitioned are written to a single file.
+	 * Returns the total number of rows written.
+	 */
+	public long exportTo(Path directory, ExportFormat format, int partitions) throws SQLException, IOException
+	{
+		Files.createDirectories(directory);
+		var bounds = partitionBounds(partitions);
+		if(bounds == null || bounds.length == 0)
+		{
+			return exportTo(directory.resolve(String.format("part-%05d.%s", 0, format.getExtension())), format);
+		}
+		
+		var key = model.getPrimaryKeys()[0];
+		var futures = new ArrayList<CompletableFuture<Long>>();
+		for(var i = 0; i < bounds.length - 1; i++)
+		{
+			var part = partition(key, bounds[i], bounds[i + 1], i == bounds.length - 2);
+			var file = directory.resolve(String.format("part-%05d.%s", i, format.getExtension()));
+			futures.add(CompletableFuture.supplyAsync(QueryDetector.propagate(() -> {
+				try
+				{
+					return part.exportTo(file, format);
+				}
+				catch(SQLException | IOException e)
+				{
+					throw new CompletionException(e);
+				}
+			}), Workers.POOL));
+		}
+		
+		var total = 0L;
+		for(var future : futures)
+		{
+			try
+			{
+				total += future.get();
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IOException(e.getMessage(), e);
+			}
+			catch(ExecutionException e)
+			{
+				if(e.getCause() instanceof IOException)
+				{
+					throw (IOException) e.getCause();
+				}
+				if(e.getCause() instanceof SQLException)
+				{
+					throw (SQLException) e.getCause();
+				}
+				throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+			}
+		}
+		return total;
+	}
+	
+	/**
+	 * Iterates over the results in primary key order, fetching batchSize rows
+	 * at a time by keyset rather than by offset.
+	 */
+	public KeysetScanner scan(int batchSize)
+	{
+		return scan(batchSize, null);
+	}
+	
+	/**
+	 * Resumes a scan after the row recorded by the checkpoint.
+	 */
+	public KeysetScanner scan(int batchSize, KeysetScanner.Checkpoint checkpoint)
+	{
+		if(batchSize < 1)
+		{
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+		if(model.getPrimaryKeys().length == 0)
+		{
+			throw new IllegalStateException(String.format("Table %s has no primary key to scan by", model.getName()));
+		}
+		if(!ordering.isEmpty())
+		{
+			throw new IllegalStateException("A scan is always ordered by primary key");
+		}
+		if(checkpoint != null && !checkpoint.getTableName().equals(model.getName()))
+		{
+			throw new IllegalArgumentException(String.format("Checkpoint is for table %s", checkpoint.getTableName()));
+		}
+		
+		return new KeysetScanner(this, model.getName(), batchSize, checkpoint == null ? null : checkpoint.getKey());
+	}
+	
+	/**
+	 * Fetches up to batchSize rows whose primary keys follow the given key,
+	 * or the first rows if it is null.
+	 */
+	List<Table> page(Object[] after, int batchSize) throws SQLException
+	{
+		var page = copy();
+		var keys = model.getPrimaryKeys();
+		for(var key : keys)
+		{
+			page.orderBy(key);
+		}
+		
+		if(after != null)
+		{
+			var branches = new FilterExpression[keys.length];
+			for(var i = 0; i < keys.length; i++)
+			{
+				var terms = new FilterExpression[i + 1];
+				for(var j = 0; j < i; j++)
+				{
+					terms[j] = FilterExpression.equal(keys[j], after[j]);
+				}
+				terms[i] = FilterExpression.compare(keys[i], FilterType.GREATER_THAN, after[i]);
+				branches[i] = FilterExpression.and(terms);
+			}
+			page.filter(FilterExpression.or(branches));
+		}
+		
+		page.limit = batchSize;
+		return page.execute(batchSize, page.rowMapper());
+	}
+	
+	private Query copy()
+	{
+		var copy = new Query(database, model);
+		copy.filters.addAll(filters);
+		copy.expressions.addAll(expressions);
+		copy.joins.putAll(joins);
+		copy.ordering.addAll(ordering);
+		copy.timeout = timeout;
+		return copy;
+	}
+	
+	private Query partition(Column<?> key, long lowerBound, long upperBound, boolean last)
+	{
+		var partition = copy();
+		
+		var range = new Filter().filterColumn(key.cloneWithValue(lowerBound), FilterType.GREATER_THAN_EQUAL);
+		if(!last)
+		{
+			range.filterColumn(key.cloneWithValue(upperBound), FilterType.LESS_THAN);
+		}
+		
+		return partition.filter(range);
+	}
+	
+	public long count() throws SQLException
+	{
+		var count = 0L;
+		for(var value : aggregate(generateSQL("COUNT(*)")))
+		{
+			count += ((Number) value).longValue();
+		}
+		return count;
+	}
+	
+	@SuppressWarnings("unchecked")
+	public <T extends Comparable<T>> Optional<T> min(Column<T> column) throws SQLException
+	{
+		return aggregate(generateSQL(String.format("MIN(%s)", column.getName()))).stream()
+				.filter(Objects::nonNull)
+				.min(Values::compare)
+				.map(v -> (T) v);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public <T extends Comparable<T>> Optional<T> max(Column<T> column) throws SQLException
+	{
+		return aggregate(generateSQL(String.format("MAX(%s)", column.getName()))).stream()
+				.filter(Objects::nonNull)
+				.max(Values::compare)
+				.map(v -> (T) v);
+	}
+	
+	private List<Object> aggregate(String sqlString) throws SQLException
+	{
+		var results = new ArrayList<Object>();
+		for(var row : aggregateRows(sqlString))
+		{
+			results.add(row[0]);
+		}
+		return results;
+	}
+	
+	/**
+	 * Runs a single-row query on every target and returns each target's row.
+	 */
+	private List<Object[]> aggregateRows(String sqlString) throws SQLException
+	{
+		var targets = targets();
+		var results = new ArrayList<Object[]>();
+		if(targets.size() == 1)
+		{
+			results.add(aggregate(targets.get(0), sqlString));
+			return results;
+		}
+		
+		var futures = new ArrayList<CompletableFuture<Object[]>>();
+		for(var target : targets)
+		{
+			futures.add(CompletableFuture.supplyAsync(QueryDetector.propagate(() -> {
+				try
+				{
+					return aggregate(target, sqlString);
+				}
+				catch(SQLException e)
+				{
+					throw new CompletionException(e);
+				}
+			}), Workers.POOL));
+		}
+		
+		for(var future : futures)
+		{
+			results.add(await(future));
+		}
+		return results;
+	}
+	
+	private Object[] aggregate(Database target, String sqlString) throws SQLException
+	{
+		try(var connection = target.getConnection();
+			var statement = connection.prepareStatement(sqlString))
+		{
+			fillStatement(statement);
+			if(timeout != null)
+			{
+				statement.setQueryTimeout(timeoutSeconds());
+			}
+			
+			try(var resultSet = statement.executeQuery())
+			{
+				var values = new Object[resultSet.getMetaData().getColumnCount()];
+				if(resultSet.next())
+				{
+					for(var i = 0; i < values.length; i++)
+					{
+						values[i] = resultSet.getObject(i + 1);
+					}
+				}
+				return values;
+			}
+		}
+	}
+	
+	/**
+	 * Makes this query always go to the database, even when its table is
+	 * replicated in memory.
+	 */
+	Query remote()
+	{
+		local = false;
+		return this;
+	}
+	
+	private List<Table> local(int maxRows)
+	{
+		if(!local || !joins.isEmpty())
+		{
+			return null;
+		}
+		
+		var replica = ReplicatedTable.lookup(database, model.getName());
+		if(replica == null)
+		{
+			return null;
+		}
+		
+		Comparator<Table> order = null;
+		for(var entry : ordering)
+		{
+			var name = entry.getFirst().getName();
+			Comparator<Table> next = (a, b) -> Values.compare(a.getColumnValue(name), b.getColumnValue(name));
+			next = entry.getSecond() ? next.reversed() : next;
+			order = order == null ? next : order.thenComparing(next);
+		}
+		
+		return replica.select(getFilterExpression(), order, maxRows);
+	}
+	
+	private <T> List<T> execute(int maxRows, RowMapper<T> mapper) throws SQLException
+	{
+		return execute(toString(), maxRows, mapper);
+	}
+	
+	private <T> List<T> execute(String sqlString, int maxRows, RowMapper<T> mapper) throws SQLException
+	{
+		var targets = targets();
+		
+		if(targets.size() == 1)
+		{
+			return fetchFrom(targets.get(0), sqlString, maxRows, mapper);
+		}
+		
+		var keyedMapper = keyed(mapper);
+		var futures = new ArrayList<CompletableFuture<List<Pair<Object[], T>>>>();
+		for(var target : targets)
+		{
+			futures.add(CompletableFuture.supplyAsync(QueryDetector.propagate(() -> {
+				try
+				{
+					return fetchFrom(target, sqlString, maxRows, keyedMapper);
+				}
+				catch(SQLException e)
+				{
+					throw new CompletionException(e);
+				}
+			}), Workers.POOL));
+		}
+		
+		var parts = new ArrayList<Iterator<Pair<Object[], T>>>();
+		for(var future : futures)
+		{
+			parts.add(await(future).iterator());
+		}
+		
+		Iterator<Pair<Object[], T>> merged;
+		if(ordering.isEmpty())
+		{
+			var concatenated = new LinkedList<Pair<Object[], T>>();
+			parts.forEach(part -> part.forEachRemaining(concatenated::add));
+			merged = concatenated.iterator();
+		}
+		else
+		{
+			merged = merge(parts, keyComparator());
+		}
+		
+		var results = new LinkedList<T>();
+		while(merged.hasNext() && (maxRows == 0 || results.size() < maxRows))
+		{
+			results.add(merged.next().getSecond());
+		}
+		
+		return results;
+	}
+	
+	private List<Database> targets()
+	{
+		var shards = database.getShards();
+		if(shards.size() == 1)
+		{
+			return shards;
+		}
+		
+		var key = shardKey();
+		if(key == null)
+		{
+			return shards;
+		}
+		
+		return List.of(database.route(key));
+	}
+	
+	private Object[] shardKey()
+	{
+		var primaryKeys = model.getPrimaryKeys();
+		if(primaryKeys.length == 0)
+		{
+			return null;
+		}
+		
+		var values = new HashMap<String, Object>();
+		for(var filter : filters)
+		{
+			if(filter.getRelations().contains(RelationType.OR))
+			{
+				continue;
+			}
+			
+			var typesIt = filter.getTypes().iterator();
+			for(var column : filter.getColumns())
+			{
+				if(typesIt.next() == FilterType.EQUAL && column.isPrimaryKey())
+				{
+					values.put(column.getName(), column.getValue());
+				}
+			}
+		}
+		
+		var key = new Object[primaryKeys.length];
+		for(var i = 0; i < key.length; i++)
+		{
+			if(!values.containsKey(primaryKeys[i].getName()))
+			{
+				return null;
+			}
+			key[i] = values.get(primaryKeys[i].getName());
+		}
+		
+		return key;
+	}
+	
+	private <T> RowMapper<Pair<Object[], T>> keyed(RowMapper<T> mapper)
+	{
+		if(ordering.isEmpty())
+		{
+			return resultSet -> Pair.of(null, mapper.map(resultSet));
+		}
+		
+		return resultSet -> {
+			var key = new Object[ordering.size()];
+			var i = 0;
+			for(var order : ordering)
+			{
+				key[i++] = resultSet.getObject(order.getFirst().getName());
+			}
+			return Pair.of(key, mapper.map(resultSet));
+		};
+	}
+	
+	private <T> Comparator<Pair<Object[], T>> keyComparator()
+	{
+		var descending = ordering.stream().map(Pair::getSecond).toArray(Boolean[]::new);
+		return (a, b) -> {
+			for(var i = 0; i < descending.length; i++)
+			{
+				var result = Values.compare(a.getFirst()[i], b.getFirst()[i]);
+				if(result != 0)
+				{
+					return descending[i] ? -result : result;
+				}
+			}
+			return 0;
+		};
+	}
+	
+	private static <T> Iterator<T> merge(List<Iterator<T>> sources, Comparator<T> comparator)
+	{
+		var heads = new PriorityQueue<Pair<T, Iterator<T>>>((a, b) -> comparator.compare(a.getFirst(), b.getFirst()));
+		for(var source : sources)
+		{
+			if(source.hasNext())
+			{
+				heads.add(Pair.of(source.next(), source));
+			}
+		}
+		
+		return new Iterator<T>()
+		{
+			@Override
+			public boolean hasNext()
+			{
+				return !heads.isEmpty();
+			}
+			
+			@Override
+			public T next()
+			{
+				var head = heads.poll();
+				if(head == null)
+				{
+					throw new NoSuchElementException();
+				}
+				if(head.getSecond().hasNext())
+				{
+					heads.add(Pair.of(head.getSecond().next(), head.getSecond()));
+				}
+				return head.getFirst();
+			}
+		};
+	}
+	
+	private <T> Stream<T> open(Database db, String sqlString, RowMapper<T> mapper, Consumer<ResultSet> onOpen) throws SQLException
+	{
+		var connection = db.getConnection();
+		var dialect = db.getDialect();
+		var inTransaction = false;
+		try
+		{
+			if(dialect.requiresTransactionForCursor() && connection.getAutoCommit())
+			{
+				connection.setAutoCommit(false);
+				inTransaction = true;
+			}
+			
+			var statement = connection.prepareStatement(sqlString);
+			statement.setFetchSize(dialect.streamingFetchSize(STREAM_FETCH_SIZE));
+			fillStatement(statement);
+			if(timeout != null)
+			{
+				statement.setQueryTimeout(timeoutSeconds());
+			}
+			
+			var resultSet = statement.executeQuery();
+			if(dialect.supportsFetchSizeChanges())
+			{
+				onOpen.accept(resultSet);
+			}
+			var spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL)
+			{
+				@Override
+				public boolean tryAdvance(Consumer<? super T> action)
+				{
+					try
+					{
+						if(!resultSet.next())
+						{
+							return false;
+						}
+						action.accept(mapper.map(resultSet));
+						return true;
+					}
+					catch(SQLException e)
+					{
+						throw new RuntimeException(e.getMessage(), e);
+					}
+				}
+			};
+			
+			var restoreAutoCommit = inTransaction;
+			return StreamSupport.stream(spliterator, false).onClose(() -> closeCursor(connection, restoreAutoCommit));
+		}
+		catch(SQLException e)
+		{
+			closeCursor(connection, inTransaction);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Closes a streamed result's connection, first ending the read-only
+	 * transaction its cursor was opened in, if any.
+	 */
+	private static void closeCursor(Connection connection, boolean inTransaction)
+	{
+		if(inTransaction)
+		{
+			try
+			{
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+			catch(SQLException e)
+			{
+			}
+		}
+		closeQuietly(connection);
+	}
+	
+	private <T> List<T> fetchFrom(Database db, String sqlString, int maxRows, RowMapper<T> mapper) throws SQLException
+	{
+		if(!hedge || db.getReplicas().isEmpty())
+		{
+			return fetch(db, sqlString, maxRows, mapper, s -> {});
+		}
+		
+		var delay = LATENCIES.percentile(sqlString, HEDGE_PERCENTILE);
+		if(delay < 0)
+		{
+			return fetch(db, sqlString, maxRows, mapper, s -> {});
+		}
+		
+		return fetchHedged(db, sqlString, maxRows, mapper, delay);
+	}
+	
+	private <T> List<T> fetchHedged(Database db, String sqlString, int maxRows, RowMapper<T> mapper, long delay) throws SQLException
+	{
+		var replicas = db.getReplicas();
+		var replica = replicas.get(Math.floorMod(hedgeCounter.getAndIncrement(), replicas.size()));
+		var result = new CompletableFuture<List<T>>();
+		var statements = new ConcurrentLinkedQueue<Statement>();
+		var pending = new AtomicInteger(2);
+		var hedged = new AtomicBoolean();
+		
+		var hedge = QueryDetector.propagate(() -> attempt(replica, sqlString, maxRows, mapper, result, statements, pending, null));
+		Runnable launchHedge = () -> {
+			if(!result.isDone() && hedged.compareAndSet(false, true))
+			{
+				Workers.POOL.execute(hedge);
+			}
+		};
+		
+		Workers.POOL.execute(QueryDetector.propagate(() -> attempt(db, sqlString, maxRows, mapper, result, statements, pending, launchHedge)));
+		var timer = Workers.SCHEDULER.schedule(launchHedge, delay, TimeUnit.NANOSECONDS);
+		
+		try
+		{
+			return await(result);
+		}
+		finally
+		{
+			timer.cancel(false);
+			for(var statement : statements)
+			{
+				cancelQuietly(statement);
+			}
+		}
+	}
+	
+	private <T> void attempt(Database db, String sqlString, int maxRows, RowMapper<T> mapper, CompletableFuture<List<T>> result,
+		Queue<Statement> statements, AtomicInteger pending, Runnable onFailure)
+	{
+		if(result.isDone())
+		{
+			return;
+		}
+		
+		try
+		{
+			result.complete(fetch(db, sqlString, maxRows, mapper, statement -> {
+				statements.add(statement);
+				if(result.isDone())
+				{
+					closeQuietly(statement);
+				}
+			}));
+		}
+		catch(SQLException e)
+		{
+			if(pending.decrementAndGet() == 0)
+			{
+				result.completeExceptionally(e);
+			}
+			else if(onFailure != null)
+			{
+				onFailure.run();
+			}
+		}
+	}
+	
+	private <T> List<T> fetch(Database db, String sqlString, int maxRows, RowMapper<T> mapper, Consumer<Statement> onPrepared) throws SQLException
+	{
+		var results = new LinkedList<T>();
+		var start = System.nanoTime();
+		var expired = new AtomicBoolean();
+		
+		try(var connection = db.getConnection();
+			var statement = connection.prepareStatement(sqlString))
+		{
+			statement.setMaxRows(maxRows);
+			fillStatement(statement);
+			onPrepared.accept(statement);
+			
+			ScheduledFuture<?> deadline = null;
+			if(timeout != null)
+			{
+				statement.setQueryTimeout(timeoutSeconds());
+				deadline = Workers.SCHEDULER.schedule(() -> {
+					expired.set(true);
+					cancelQuietly(statement);
+				}, timeout.toNanos(), TimeUnit.NANOSECONDS);
+			}
+			
+			try(var resultSet = statement.executeQuery())
+			{
+				while(resultSet.next())
+				{
+					results.add(mapper.map(resultSet));
+				}
+			}
+			finally
+			{
+				if(deadline != null)
+				{
+					deadline.cancel(false);
+				}
+			}
+		}
+		catch(SQLException e)
+		{
+			if(expired.get() && !(e instanceof SQLTimeoutException))
+			{
+				throw new SQLTimeoutException(String.format("Query exceeded its deadline of %d ms", timeout.toMillis()), e);
+			}
+			throw e;
+		}
+		
+		LATENCIES.record(sqlString, System.nanoTime() - start);
+		
+		return results;
+	}
+	
+	private int timeoutSeconds()
+	{
+		return (int) Math.max(1, (timeout.toMillis() + 999) / 1000);
+	}
+	
+	private static <T> T await(Future<T> future) throws SQLException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for query results", e);
+		}
+		catch(ExecutionException e)
+		{
+			if(e.getCause() instanceof SQLException)
+			{
+				throw (SQLException) e.getCause();
+			}
+			throw new SQLException(e.getCause());
+		}
+	}
+	
+	private class PartitionSpliterator implements Spliterator<Table>
+	{
+		private final Column<?> key;
+		private final long[] bounds;
+		private final Queue<Stream<Table>> open;
+		private int next;
+		private int end;
+		private Stream<Table> current;
+		private Iterator<Table> currentIt;
+		
+		public PartitionSpliterator(Column<?> key, long[] bounds, int start, int end, Queue<Stream<Table>> open)
+		{
+			this.key = key;
+			this.bounds = bounds;
+			this.next = start;
+			this.end = end;
+			this.open = open;
+		}
+		
+		@Override
+		public boolean tryAdvance(Consumer<? super Table> action)
+		{
+			while(currentIt == null || !currentIt.hasNext())
+			{
+				if(current != null)
+				{
+					current.close();
+					open.remove(current);
+					current = null;
+					currentIt = null;
+				}
+				if(next >= end)
+				{
+					return false;
+				}
+				
+				try
+				{
+					var partition = partition(key, bounds[next], bounds[next + 1], next == bounds.length - 2);
+					current = partition.stream();
+					open.add(current);
+					currentIt = current.iterator();
+					next++;
+				}
+				catch(SQLException e)
+				{
+					throw new RuntimeException(e.getMessage(), e);
+				}
+			}
+			
+			action.accept(currentIt.next());
+			return true;
+		}
+		
+		@Override
+		public Spliterator<Table> trySplit()
+		{
+			if(current != null || end - next < 2)
+			{
+				return null;
+			}
+			
+			var middle = next + (end - next) / 2;
+			var prefix = new PartitionSpliterator(key, bounds, next, middle, open);
+			next = middle;
+			return prefix;
+		}
+		
+		@Override
+		public long estimateSize()
+		{
+			return Long.MAX_VALUE;
+		}
+		
+		@Override
+		public int characteristics()
+		{
+			return Spliterator.NONNULL;
+		}
+	}
+	
+	private static void closeQuietly(AutoCloseable closeable)
+	{
+		try
+		{
+			closeable.close();
+		}
+		catch(Exception e)
+		{
+		}
+	}
+	
+	private static void cancelQuietly(Statement statement)
+	{
+		try
+		{
+			statement.cancel();
+		}
+		catch(SQLException e)
+		{
+		}
+	}
+	
+	private void fillStatement(PreparedStatement s) throws SQLException
+	{
+		var index = 1;
+		
+		for(var entry : joins.entrySet())
+		{
+			for(var filter : entry.getValue().getValueFilters())
+			{
+				for(var column : filter.getColumns())
+				{
+					column.bind(s, index++);
+				}
+			}
+		}
+
+		for(var filter : filters)
+		{
+			for(var column : filter.getColumns())
+			{
+				column.bind(s, index++);
+			}
+		}
+		
+		for(var expression : expressions)
+		{
+			index = expression.bind(s, index);
+		}
+		
+		if(limit > 0)
+		{
+			s.setInt(index++, limit);
+		}
+	}
+	
+	private RowMapper<Table> rowMapper()
+	{
+		if(deferredNames.isEmpty())
+		{
+			return results -> generateRow(results, null);
+		}
+		
+		var loader = new LazyLoader(database);
+		return results -> generateRow(results, loader);
+	}
+	
+	private RowMapper<Table> streamingRowMapper()
+	{
+		if(deferredNames.isEmpty())
+		{
+			return results -> generateRow(results, null);
+		}
+		
+		var loader = LazyLoader.windowed(database);
+		return results -> generateRow(results, loader);
+	}
+	
+	private Object[] readValues(ResultSet results) throws SQLException
+	{
+		var values = new Object[selected.length];
+		for(var i = 0; i < values.length; i++)
+		{
+			values[i] = selectedColumns[i].read(results, i+1);
+		}
+		
+		return values;
+	}
+	
+	private Table createRow(Object[] values, LazyLoader loader)
+	{
+		var columns = new Column<?>[modelColumns.length];
+		for(var i = 0; i < selected.length; i++)
+		{
+			columns[selected[i]] = modelColumns[selected[i]].cloneWithValue(values[i]);
+		}
+		
+		var row = new Table(model.getName(), deferred(columns));
+		row.setInDatabase(true);
+		defer(row, loader);
+		
+		return row;
+	}
+	
+	private Table generateRow(ResultSet results, LazyLoader loader) throws SQLException
+	{
+		var columns = new Column<?>[modelColumns.length];
+		for(var i = 0; i < selected.length; i++)
+		{
+			columns[selected[i]] = modelColumns[selected[i]].cloneWithValue(modelColumns[selected[i]].read(results, i+1));
+		}
+		
+		var row = new Table(model.getName(), deferred(columns));
+		row.setInDatabase(true);
+		defer(row, loader);
+
+		return row;
+	}
+	
+	private Column<?>[] deferred(Column<?>[] columns)
+	{
+		for(var i = 0; i < columns.length; i++)
+		{
+			if(columns[i] == null)
+			{
+				columns[i] = modelColumns[i].cloneWithValue(null);
+			}
+		}
+		
+		return columns;
+	}
+	
+	private void defer(Table row, LazyLoader loader)
+	{
+		if(loader == null)
+		{
+			return;
+		}
+		
+		row.deferColumns(loader, deferredNames);
+		loader.register(row);
 	}
-}
\ No newline at end of file
+}
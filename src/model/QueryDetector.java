@@ -0,0 +1,323 @@
+package model;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Detects N+1 and duplicate queries within a unit of work on one thread.
+ * While a detector is open, it is added as a {@link StatementInterceptor} to
+ * connections opened on that thread, and every statement is fingerprinted
+ * by its SQL shape and parameters. Closing the detector reports each shape run more than
+ * the threshold number of times with different parameters, and each
+ * statement repeated with identical parameters.
+ * 
+ * <pre>
+ * try(var detector = QueryDetector.start())
+ * {
+ *     ...
+ *     detector.getFindings().forEach(System.err::println);
+ * }
+ * </pre>
+ */
+public class QueryDetector implements StatementInterceptor, AutoCloseable
+{
+	private static final ThreadLocal<QueryDetector> current = new ThreadLocal<QueryDetector>();
+	
+	public enum Kind
+	{
+		N_PLUS_ONE, DUPLICATE
+	}
+	
+	public static class Finding
+	{
+		private final Kind kind;
+		private final String sql;
+		private final List<Object> parameters;
+		private final int count;
+		private final Duration wasted;
+		private final StackTraceElement[] firstCallSite;
+		
+		Finding(Kind kind, String sql, List<Object> parameters, int count, Duration wasted, StackTraceElement[] firstCallSite)
+		{
+			this.kind = kind;
+			this.sql = sql;
+			this.parameters = parameters;
+			this.count = count;
+			this.wasted = wasted;
+			this.firstCallSite = firstCallSite;
+		}
+		
+		public Kind getKind()
+		{
+			return kind;
+		}
+		
+		public String getSQL()
+		{
+			return sql;
+		}
+		
+		/**
+		 * The repeated parameters of a duplicate, or null for an N+1 shape.
+		 */
+		public List<Object> getParameters()
+		{
+			return parameters;
+		}
+		
+		public int getCount()
+		{
+			return count;
+		}
+		
+		/**
+		 * The time spent on every execution after the first.
+		 */
+		public Duration getWasted()
+		{
+			return wasted;
+		}
+		
+		public StackTraceElement[] getFirstCallSite()
+		{
+			return firstCallSite.clone();
+		}
+		
+		@Override
+		public String toString()
+		{
+			var result = String.format("%s: executed %d times, %d ms wasted\n%s", kind, count, wasted.toMillis(), sql);
+			if(parameters != null)
+			{
+				result += String.format("\nparameters %s", parameters);
+			}
+			for(var element : firstCallSite)
+			{
+				result += String.format("\n\tat %s", element);
+			}
+			return result;
+		}
+	}
+	
+	private static class Executions
+	{
+		int count;
+		long totalNanos;
+		long firstNanos;
+		StackTraceElement[] callSite;
+		
+		void add(long nanos)
+		{
+			if(count++ == 0)
+			{
+				firstNanos = nanos;
+				callSite = callSite();
+			}
+			totalNanos += nanos;
+		}
+		
+		Duration wasted()
+		{
+			return Duration.ofNanos(totalNanos - firstNanos);
+		}
+	}
+	
+	private static class Shape extends Executions
+	{
+		private final Map<List<Object>, Executions> byParameters = new LinkedHashMap<List<Object>, Executions>();
+	}
+	
+	private final int threshold;
+	private final QueryDetector enclosing;
+	private final Map<String, Shape> shapes;
+	private Consumer<List<Finding>> reporter;
+	
+	public static QueryDetector start()
+	{
+		return start(1);
+	}
+	
+	/**
+	 * Starts detecting on the current thread, flagging shapes run more than
+	 * threshold times with different parameters.
+	 */
+	public static QueryDetector start(int threshold)
+	{
+		var detector = new QueryDetector(threshold, current.get());
+		current.set(detector);
+		return detector;
+	}
+	
+	private QueryDetector(int threshold, QueryDetector enclosing)
+	{
+		if(threshold < 1)
+		{
+			throw new IllegalArgumentException("Threshold must be at least 1");
+		}
+		
+		this.threshold = threshold;
+		this.enclosing = enclosing;
+		shapes = new LinkedHashMap<String, Shape>();
+	}
+	
+	/**
+	 * Sets a callback given the findings, if there are any, when the
+	 * detector is closed.
+	 */
+	public QueryDetector onClose(Consumer<List<Finding>> reporter)
+	{
+		this.reporter = reporter;
+		return this;
+	}
+	
+	public synchronized List<Finding> getFindings()
+	{
+		var findings = new LinkedList<Finding>();
+		for(var entry : shapes.entrySet())
+		{
+			var shape = entry.getValue();
+			if(shape.byParameters.size() > threshold)
+			{
+				findings.add(new Finding(Kind.N_PLUS_ONE, entry.getKey(), null, shape.count, shape.wasted(), shape.callSite));
+			}
+			
+			for(var parameters : shape.byParameters.entrySet())
+			{
+				var executions = parameters.getValue();
+				if(executions.count > 1)
+				{
+					findings.add(new Finding(Kind.DUPLICATE, entry.getKey(), parameters.getKey(), executions.count, executions.wasted(), executions.callSite));
+				}
+			}
+		}
+		
+		findings.sort((a, b) -> b.getWasted().compareTo(a.getWasted()));
+		return findings;
+	}
+	
+	@Override
+	public void close()
+	{
+		if(current.get() == this)
+		{
+			if(enclosing == null)
+			{
+				current.remove();
+			}
+			else
+			{
+				current.set(enclosing);
+			}
+		}
+		
+		if(reporter != null)
+		{
+			var findings = getFindings();
+			if(!findings.isEmpty())
+			{
+				reporter.accept(findings);
+			}
+		}
+	}
+	
+	private synchronized void record(String sql, List<Object> parameters, long nanos)
+	{
+		var shape = shapes.computeIfAbsent(sql.strip().replaceAll("\\s+", " "), k -> new Shape());
+		shape.add(nanos);
+		shape.byParameters.computeIfAbsent(parameters, k -> new Executions()).add(nanos);
+		
+		if(enclosing != null)
+		{
+			enclosing.record(sql, parameters, nanos);
+		}
+	}
+	
+	private static StackTraceElement[] callSite()
+	{
+		return Arrays.stream(new Throwable().getStackTrace())
+					 .filter(e -> !e.getClassName().startsWith("model.") && !e.getClassName().startsWith("java.") 
+							   && !e.getClassName().startsWith("jdk.") && !e.getClassName().startsWith("com.sun.proxy."))
+					 .toArray(StackTraceElement[]::new);
+	}
+	
+	static QueryDetector current()
+	{
+		return current.get();
+	}
+	
+	/**
+	 * Wraps work handed to another thread so the queries it runs are recorded
+	 * by the detector active on the calling thread.
+	 */
+	static Runnable propagate(Runnable task)
+	{
+		var detector = current.get();
+		if(detector == null)
+		{
+			return task;
+		}
+		
+		return () -> {
+			var previous = current.get();
+			current.set(detector);
+			try
+			{
+				task.run();
+			}
+			finally
+			{
+				restore(previous);
+			}
+		};
+	}
+	
+	static <T> Supplier<T> propagate(Supplier<T> task)
+	{
+		var detector = current.get();
+		if(detector == null)
+		{
+			return task;
+		}
+		
+		return () -> {
+			var previous = current.get();
+			current.set(detector);
+			try
+			{
+				return task.get();
+			}
+			finally
+			{
+				restore(previous);
+			}
+		};
+	}
+	
+	private static void restore(QueryDetector previous)
+	{
+		if(previous == null)
+		{
+			current.remove();
+		}
+		else
+		{
+			current.set(previous);
+		}
+	}
+	
+	@Override
+	public void afterExecute(StatementContext context, Duration elapsed, Throwable failure)
+	{
+		var batch = context.getBatch();
+		var parameters = batch.isEmpty() ? new ArrayList<Object>(context.getParameters()) : new ArrayList<Object>(batch);
+		record(context.getSQL(), Collections.unmodifiableList(parameters), elapsed.toNanos());
+	}
+}
@@ -0,0 +1,187 @@
+package model;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Publishes a query's rows as subscribers request them. Each subscription
+ * runs the query separately, reading from the open cursor only while there
+ * is outstanding demand and sizing JDBC fetches to match it.
+ */
+final class QueryPublisher<T> implements Flow.Publisher<T>
+{
+	private static final int MAX_FETCH_SIZE = 1000;
+	
+	interface Opener<T>
+	{
+		Stream<T> open(Consumer<ResultSet> onOpen) throws SQLException;
+	}
+	
+	private final Opener<T> opener;
+	
+	QueryPublisher(Opener<T> opener)
+	{
+		this.opener = opener;
+	}
+	
+	@Override
+	public void subscribe(Flow.Subscriber<? super T> subscriber)
+	{
+		subscriber.onSubscribe(new RowSubscription<T>(subscriber, opener));
+	}
+	
+	private static final class RowSubscription<T> implements Flow.Subscription, Runnable
+	{
+		private final Flow.Subscriber<? super T> subscriber;
+		private final Opener<T> opener;
+		private final AtomicLong demand;
+		private final AtomicInteger pending;
+		private final List<ResultSet> resultSets;
+		private volatile boolean cancelled;
+		private volatile Throwable invalidRequest;
+		private boolean done;
+		private Stream<T> stream;
+		private Iterator<T> rows;
+		
+		RowSubscription(Flow.Subscriber<? super T> subscriber, Opener<T> opener)
+		{
+			this.subscriber = subscriber;
+			this.opener = opener;
+			demand = new AtomicLong();
+			pending = new AtomicInteger();
+			resultSets = new CopyOnWriteArrayList<ResultSet>();
+		}
+		
+		@Override
+		public void request(long n)
+		{
+			if(n <= 0)
+			{
+				invalidRequest = new IllegalArgumentException("Must request a positive number of rows");
+			}
+			else
+			{
+				demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+			}
+			schedule();
+		}
+		
+		@Override
+		public void cancel()
+		{
+			cancelled = true;
+			schedule();
+		}
+		
+		private void schedule()
+		{
+			if(pending.getAndIncrement() == 0)
+			{
+				Workers.POOL.execute(this);
+			}
+		}
+		
+		@Override
+		public void run()
+		{
+			var missed = 1;
+			do
+			{
+				drain();
+				missed = pending.addAndGet(-missed);
+			}
+			while(missed != 0);
+		}
+		
+		private void drain()
+		{
+			if(done)
+			{
+				return;
+			}
+			if(cancelled)
+			{
+				close();
+				return;
+			}
+			if(invalidRequest != null)
+			{
+				close();
+				subscriber.onError(invalidRequest);
+				return;
+			}
+			
+			try
+			{
+				if(rows == null)
+				{
+					stream = opener.open(resultSets::add);
+					rows = stream.iterator();
+				}
+				
+				var requested = demand.get();
+				resize(requested);
+				while(requested > 0 && !cancelled)
+				{
+					if(!rows.hasNext())
+					{
+						close();
+						subscriber.onComplete();
+						return;
+					}
+					
+					subscriber.onNext(rows.next());
+					requested = demand.decrementAndGet();
+				}
+				
+				if(cancelled)
+				{
+					close();
+				}
+				else if(!rows.hasNext())
+				{
+					close();
+					subscriber.onComplete();
+				}
+			}
+			catch(SQLException | RuntimeException e)
+			{
+				close();
+				subscriber.onError(e.getCause() instanceof SQLException ? e.getCause() : e);
+			}
+		}
+		
+		private void resize(long requested)
+		{
+			var fetchSize = (int) Math.min(Math.max(requested, 1), MAX_FETCH_SIZE);
+			for(var resultSet : resultSets)
+			{
+				try
+				{
+					resultSet.setFetchSize(fetchSize);
+				}
+				catch(SQLException e)
+				{
+				}
+			}
+		}
+		
+		private void close()
+		{
+			done = true;
+			if(stream != null)
+			{
+				stream.close();
+				stream = null;
+			}
+		}
+	}
+}
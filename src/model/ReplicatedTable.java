@@ -0,0 +1,411 @@
+package model;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import model.Filter.FilterType;
+
+/**
+ * Keeps a full in-memory copy of a small, frequently read table, indexed by
+ * primary key and by any declared hash or sorted columns. Once started,
+ * queries on the same database and table whose filters can be evaluated in
+ * memory are answered from the copy. Refreshes build a new copy and swap it in
+ * atomically, so readers never see a partial one.
+ */
+public class ReplicatedTable
+{
+	private static final System.Logger LOGGER = System.getLogger(ReplicatedTable.class.getName());
+	private static final Map<Database, Map<String, ReplicatedTable>> replicated = new ConcurrentHashMap<Database, Map<String, ReplicatedTable>>();
+	
+	private final Database database;
+	private final Table model;
+	private final List<Column<?>> hashIndexed;
+	private final List<Column<?>> sortedIndexed;
+	private Column<?> versionColumn;
+	private Duration refreshInterval;
+	private int fullReloadEvery;
+	private int refreshes;
+	private volatile Snapshot snapshot;
+	private ScheduledFuture<?> refresher;
+	private volatile Exception lastError;
+	
+	public ReplicatedTable(Database database, Table model)
+	{
+		this.database = Objects.requireNonNull(database);
+		this.model = Objects.requireNonNull(model);
+		
+		if(model.getPrimaryKeys().length == 0)
+		{
+			throw new IllegalArgumentException("Cannot replicate a table with no primary keys");
+		}
+		
+		hashIndexed = new LinkedList<Column<?>>();
+		sortedIndexed = new LinkedList<Column<?>>();
+		fullReloadEvery = 10;
+	}
+	
+	static ReplicatedTable lookup(Database database, String tableName)
+	{
+		var tables = replicated.get(database);
+		return tables == null ? null : tables.get(tableName);
+	}
+	
+	public ReplicatedTable addHashIndex(Column<?> column)
+	{
+		hashIndexed.add(Objects.requireNonNull(column));
+		return this;
+	}
+	
+	public ReplicatedTable addSortedIndex(Column<?> column)
+	{
+		sortedIndexed.add(Objects.requireNonNull(column));
+		return this;
+	}
+	
+	/**
+	 * Declares a monotonically increasing version or last-modified column, so
+	 * refreshes only fetch rows changed since the last one.
+	 */
+	public ReplicatedTable setVersionColumn(Column<?> column)
+	{
+		versionColumn = column;
+		return this;
+	}
+	
+	public ReplicatedTable setRefreshInterval(Duration interval)
+	{
+		refreshInterval = interval;
+		return this;
+	}
+	
+	/**
+	 * Incremental refreshes cannot see deleted rows, so every given number of
+	 * scheduled refreshes reloads the whole table instead.
+	 */
+	public ReplicatedTable setFullReloadEvery(int refreshes)
+	{
+		if(refreshes < 1)
+		{
+			throw new IllegalArgumentException("Must reload at least every refresh");
+		}
+		
+		fullReloadEvery = refreshes;
+		return this;
+	}
+	
+	public synchronized ReplicatedTable start() throws SQLException
+	{
+		reload();
+		replicated.computeIfAbsent(database, k -> new ConcurrentHashMap<String, ReplicatedTable>()).put(model.getName(), this);
+		
+		if(refreshInterval != null && refresher == null)
+		{
+			refresher = Workers.SCHEDULER.scheduleWithFixedDelay(() -> {
+				try
+				{
+					if(versionColumn == null || ++refreshes % fullReloadEvery == 0)
+					{
+						reload();
+					}
+					else
+					{
+						refresh();
+					}
+					lastError = null;
+				}
+				catch(SQLException | RuntimeException e)
+				{
+					lastError = e;
+					LOGGER.log(System.Logger.Level.WARNING, String.format("Could not refresh replicated table %s", model.getName()), e);
+				}
+			}, refreshInterval.toNanos(), refreshInterval.toNanos(), TimeUnit.NANOSECONDS);
+		}
+		
+		return this;
+	}
+	
+	public synchronized void stop()
+	{
+		var tables = replicated.get(database);
+		if(tables != null)
+		{
+			tables.remove(model.getName(), this);
+		}
+		if(refresher != null)
+		{
+			refresher.cancel(false);
+			refresher = null;
+		}
+	}
+	
+	public synchronized void reload() throws SQLException
+	{
+		var rows = new LinkedHashMap<Key, Table>();
+		for(var row : new Query(database, model).remote().all())
+		{
+			rows.put(Key.of(row.getPrimaryKeys()), row.copy());
+		}
+		
+		snapshot = new Snapshot(rows);
+	}
+	
+	public synchronized void refresh() throws SQLException
+	{
+		var current = snapshot;
+		if(current == null || versionColumn == null || current.maxVersion == null)
+		{
+			reload();
+			return;
+		}
+		
+		var changed = new Query(database, model).remote()
+							.filter(versionColumn.cloneWithValue(current.maxVersion), FilterType.GREATER_THAN)
+							.all();
+		if(changed.isEmpty())
+		{
+			return;
+		}
+		
+		var rows = new LinkedHashMap<Key, Table>(current.byPrimaryKey);
+		for(var row : changed)
+		{
+			rows.put(Key.of(row.getPrimaryKeys()), row.copy());
+		}
+		
+		snapshot = new Snapshot(rows);
+	}
+	
+	/**
+	 * Returns the exception thrown by the last scheduled refresh, or null if
+	 * it succeeded. While refreshes fail, queries keep being answered from the
+	 * last good copy.
+	 */
+	public Exception getLastError()
+	{
+		return lastError;
+	}
+	
+	public List<Table> getRows()
+	{
+		return copies(requireSnapshot().rows);
+	}
+	
+	public Optional<Table> get(Object... primaryKey)
+	{
+		return Optional.ofNullable(requireSnapshot().byPrimaryKey.get(new Key(primaryKey))).map(Table::copy);
+	}
+	
+	/**
+	 * Returns copies of the rows matching the expression, in the given order
+	 * and up to maxRows rows, or all of them when maxRows is 0.
+	 */
+	public List<Table> select(FilterExpression expression, Comparator<Table> order, int maxRows)
+	{
+		var current = requireSnapshot();
+		var candidates = expression == null ? current.rows : current.candidates(expression);
+		var results = new ArrayList<Table>();
+		
+		for(var row : candidates)
+		{
+			if(expression == null || expression.test(row))
+			{
+				results.add(row);
+			}
+		}
+		
+		if(order != null)
+		{
+			results.sort(order);
+		}
+		if(maxRows > 0 && results.size() > maxRows)
+		{
+			return copies(results.subList(0, maxRows));
+		}
+		return copies(results);
+	}
+	
+	private Snapshot requireSnapshot()
+	{
+		var current = snapshot;
+		if(current == null)
+		{
+			throw new IllegalStateException("Replicated table has not been loaded");
+		}
+		return current;
+	}
+	
+	private static List<Table> copies(Collection<Table> rows)
+	{
+		var copies = new ArrayList<Table>(rows.size());
+		for(var row : rows)
+		{
+			copies.add(row.copy());
+		}
+		return copies;
+	}
+	
+	private class Snapshot
+	{
+		private final List<Table> rows;
+		private final Map<Key, Table> byPrimaryKey;
+		private final Map<String, Map<Key, List<Table>>> hashIndexes;
+		private final Map<String, NavigableMap<Object, List<Table>>> sortedIndexes;
+		private final Object maxVersion;
+		
+		public Snapshot(Map<Key, Table> rows)
+		{
+			this.byPrimaryKey = Collections.unmodifiableMap(rows);
+			this.rows = List.copyOf(rows.values());
+			hashIndexes = new HashMap<String, Map<Key, List<Table>>>();
+			sortedIndexes = new HashMap<String, NavigableMap<Object, List<Table>>>();
+			Object maxVersion = null;
+			
+			for(var column : hashIndexed)
+			{
+				var index = new HashMap<Key, List<Table>>();
+				for(var row : this.rows)
+				{
+					index.computeIfAbsent(new Key(row.getColumnValue(column.getName())), k -> new ArrayList<Table>()).add(row);
+				}
+				hashIndexes.put(column.getName(), index);
+			}
+			
+			for(var column : sortedIndexed)
+			{
+				var index = new TreeMap<Object, List<Table>>(Values::compare);
+				for(var row : this.rows)
+				{
+					var value = row.getColumnValue(column.getName());
+					if(value != null)
+					{
+						index.computeIfAbsent(value, k -> new ArrayList<Table>()).add(row);
+					}
+				}
+				sortedIndexes.put(column.getName(), index);
+			}
+			
+			if(versionColumn != null)
+			{
+				for(var row : this.rows)
+				{
+					var version = row.getColumnValue(versionColumn.getName());
+					if(version != null && (maxVersion == null || Values.compare(version, maxVersion) > 0))
+					{
+						maxVersion = version;
+					}
+				}
+			}
+			this.maxVersion = maxVersion;
+		}
+		
+		/**
+		 * Narrows the rows to test using the first conjunct an index can
+		 * answer, falling back to every row.
+		 */
+		public Collection<Table> candidates(FilterExpression expression)
+		{
+			var primaryKeys = model.getPrimaryKeys();
+			
+			for(var conjunct : expression.conjuncts())
+			{
+				if(conjunct instanceof FilterExpression.Comparison)
+				{
+					var comparison = (FilterExpression.Comparison) conjunct;
+					var name = comparison.getColumn().getName();
+					var value = comparison.getValue();
+					
+					if(comparison.getType() == FilterType.EQUAL)
+					{
+						if(primaryKeys.length == 1 && primaryKeys[0].getName().equals(name))
+						{
+							var row = byPrimaryKey.get(new Key(value));
+							return row == null ? List.of() : List.of(row);
+						}
+						if(hashIndexes.containsKey(name))
+						{
+							return hashIndexes.get(name).getOrDefault(new Key(value), List.of());
+						}
+					}
+					
+					var sorted = sortedIndexes.get(name);
+					if(sorted != null && value != null && comparison.getType() != FilterType.NOT_EQUAL)
+					{
+						switch(comparison.getType())
+						{
+							case EQUAL:
+								return sorted.getOrDefault(value, List.of());
+							case GREATER_THAN:
+								return flatten(sorted.tailMap(value, false));
+							case GREATER_THAN_EQUAL:
+								return flatten(sorted.tailMap(value, true));
+							case LESS_THAN:
+								return flatten(sorted.headMap(value, false));
+							default:
+								return flatten(sorted.headMap(value, true));
+						}
+					}
+				}
+				else if(conjunct instanceof FilterExpression.Between)
+				{
+					var between = (FilterExpression.Between) conjunct;
+					var sorted = sortedIndexes.get(between.getColumn().getName());
+					if(sorted != null && between.getLow() != null && between.getHigh() != null)
+					{
+						if(Values.compare(between.getLow(), between.getHigh()) > 0)
+						{
+							return List.of();
+						}
+						return flatten(sorted.subMap(between.getLow(), true, between.getHigh(), true));
+					}
+				}
+				else if(conjunct instanceof FilterExpression.In)
+				{
+					var in = (FilterExpression.In) conjunct;
+					var index = hashIndexes.get(in.getColumn().getName());
+					if(index != null)
+					{
+						var seen = Collections.newSetFromMap(new IdentityHashMap<Table, Boolean>());
+						var matches = new ArrayList<Table>();
+						for(var value : in.getValues())
+						{
+							for(var row : index.getOrDefault(new Key(value), List.of()))
+							{
+								if(seen.add(row))
+								{
+									matches.add(row);
+								}
+							}
+						}
+						return matches;
+					}
+				}
+			}
+			
+			return rows;
+		}
+		
+		private Collection<Table> flatten(Map<Object, List<Table>> range)
+		{
+			var results = new ArrayList<Table>();
+			range.values().forEach(results::addAll);
+			return results;
+		}
+	}
+}
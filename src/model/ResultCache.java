@@ -0,0 +1,290 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps query results in checksummed segment files on disk so a restarted
+ * process can serve them without going to the database. Each result is
+ * stored with the value of a freshness probe, and is only used while the
+ * probe still returns the same value.
+ * 
+ * @see Query#cache(ResultCache, Column)
+ */
+public class ResultCache
+{
+	private static final int MAGIC = 0x4F524D43;
+	private static final int HEADER = Integer.BYTES * 2 + Long.BYTES;
+	private static final String SUFFIX = ".seg";
+	
+	private static final int MAX_PROBES = 10000;
+	
+	private final Path directory;
+	private final Map<String, Probe> probes;
+	private volatile Duration probeInterval;
+	
+	public ResultCache(Path directory) throws IOException
+	{
+		this.directory = Files.createDirectories(directory);
+		probeInterval = Duration.ZERO;
+		probes = Collections.synchronizedMap(new LinkedHashMap<String, Probe>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Probe> eldest)
+			{
+				return size() > MAX_PROBES;
+			}
+		});
+	}
+	
+	/**
+	 * Lets a query reuse its last freshness probe for the given time instead
+	 * of checking the database on every call, accepting results up to that
+	 * much out of date.
+	 */
+	public ResultCache setProbeInterval(Duration interval)
+	{
+		probeInterval = interval.isNegative() ? Duration.ZERO : interval;
+		if(probeInterval.isZero())
+		{
+			probes.clear();
+		}
+		return this;
+	}
+	
+	/**
+	 * Returns the probe values last seen for the key, if they were checked
+	 * within the probe interval.
+	 */
+	Object[] recentProbe(String key)
+	{
+		var probe = probes.get(key);
+		if(probe == null || System.nanoTime() - probe.checkedAt > probeInterval.toNanos())
+		{
+			return null;
+		}
+		return probe.values;
+	}
+	
+	void probed(String key, Object[] values)
+	{
+		if(!probeInterval.isZero())
+		{
+			probes.put(key, new Probe(values, System.nanoTime()));
+		}
+	}
+	
+	public Path getDirectory()
+	{
+		return directory;
+	}
+	
+	public void clear() throws IOException
+	{
+		try(var files = Files.list(directory))
+		{
+			for(var file : (Iterable<Path>) files::iterator)
+			{
+				if(file.getFileName().toString().endsWith(SUFFIX))
+				{
+					Files.deleteIfExists(file);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Builds the cache key of a query from its SQL, its parameters and the
+	 * definition of the columns it reads, so a schema change misses.
+	 */
+	static String key(String sql, List<Object> parameters, Column<?>[] columns)
+	{
+		var text = new StringBuilder(sql).append('\u0000');
+		for(var parameter : parameters)
+		{
+			text.append(parameter == null ? "null" : parameter.getClass().getName() + ":" + parameter).append('\u0000');
+		}
+		for(var column : columns)
+		{
+			text.append(String.format("%s %d %d %b\u0000", column.getName(), column.getType(), column.getLength(), column.isPrimaryKey()));
+		}
+		
+		try
+		{
+			var digest = MessageDigest.getInstance("SHA-256").digest(text.toString().getBytes(StandardCharsets.UTF_8));
+			var hex = new StringBuilder();
+			for(var b : digest)
+			{
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Returns the cached rows for the key if they were stored with the same
+	 * probe values, or null on a miss. Damaged segments are removed.
+	 */
+	List<Object[]> get(String key, Object[] probe) throws IOException
+	{
+		var file = directory.resolve(key + SUFFIX);
+		if(!Files.exists(file))
+		{
+			return null;
+		}
+		
+		try(var channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if(buffer.remaining() < HEADER || buffer.getInt() != MAGIC)
+			{
+				Files.deleteIfExists(file);
+				return null;
+			}
+			
+			var checksum = buffer.getInt();
+			var length = buffer.getLong();
+			if(length != buffer.remaining())
+			{
+				Files.deleteIfExists(file);
+				return null;
+			}
+			
+			var crc = new CRC32();
+			crc.update(buffer.duplicate());
+			if((int) crc.getValue() != checksum)
+			{
+				Files.deleteIfExists(file);
+				return null;
+			}
+			
+			var stored = RowCodec.decode(buffer, buffer.getInt());
+			if(stored.length != probe.length)
+			{
+				return null;
+			}
+			for(var i = 0; i < probe.length; i++)
+			{
+				if(!Values.equal(stored[i], probe[i]))
+				{
+					return null;
+				}
+			}
+			
+			var columnCount = buffer.getInt();
+			var rowCount = buffer.getInt();
+			var rows = new ArrayList<Object[]>(rowCount);
+			for(var i = 0; i < rowCount; i++)
+			{
+				rows.add(RowCodec.decode(buffer, columnCount));
+			}
+			return rows;
+		}
+	}
+	
+	/**
+	 * Writes the rows to a new segment and moves it into place, so readers
+	 * never see a partly written one.
+	 */
+	void put(String key, Object[] probe, int columnCount, List<Object[]> rows) throws IOException
+	{
+		var codec = new RowCodec();
+		var temporary = Files.createTempFile(directory, key, ".tmp");
+		try
+		{
+			try(var channel = FileChannel.open(temporary, StandardOpenOption.WRITE))
+			{
+				var crc = new CRC32();
+				var buffer = ByteBuffer.allocateDirect(1 << 16);
+				
+				channel.position(HEADER);
+				buffer.putInt(probe.length);
+				write(channel, buffer, crc, codec.encode(probe));
+				if(buffer.remaining() < 2 * Integer.BYTES)
+				{
+					drain(channel, buffer, crc);
+				}
+				buffer.putInt(columnCount).putInt(rows.size());
+				for(var row : rows)
+				{
+					write(channel, buffer, crc, codec.encode(row));
+				}
+				drain(channel, buffer, crc);
+				var length = channel.position() - HEADER;
+				
+				buffer.clear();
+				buffer.putInt(MAGIC).putInt((int) crc.getValue()).putLong(length).flip();
+				channel.write(buffer, 0);
+			}
+			
+			Files.move(temporary, directory.resolve(key + SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally
+		{
+			Files.deleteIfExists(temporary);
+		}
+	}
+	
+	private static void write(FileChannel channel, ByteBuffer buffer, CRC32 crc, ByteBuffer payload) throws IOException
+	{
+		if(buffer.remaining() < payload.remaining())
+		{
+			drain(channel, buffer, crc);
+		}
+		
+		if(buffer.remaining() < payload.remaining())
+		{
+			crc.update(payload.duplicate());
+			while(payload.hasRemaining())
+			{
+				channel.write(payload);
+			}
+		}
+		else
+		{
+			buffer.put(payload);
+		}
+	}
+	
+	private static void drain(FileChannel channel, ByteBuffer buffer, CRC32 crc) throws IOException
+	{
+		buffer.flip();
+		crc.update(buffer.duplicate());
+		while(buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+	
+	private static class Probe
+	{
+		private final Object[] values;
+		private final long checkedAt;
+		
+		public Probe(Object[] values, long checkedAt)
+		{
+			this.values = values;
+			this.checkedAt = checkedAt;
+		}
+	}
+}
@@ -0,0 +1,239 @@
+package model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Set;
+
+/**
+ * Compact binary encoding of a row's column values: one tag byte per value
+ * followed by a fixed-width or length-prefixed payload.
+ */
+final class RowCodec
+{
+	private static final byte NULL = 0;
+	private static final byte INTEGER = 1;
+	private static final byte LONG = 2;
+	private static final byte DOUBLE = 3;
+	private static final byte FLOAT = 4;
+	private static final byte SHORT = 5;
+	private static final byte BYTE = 6;
+	private static final byte BOOLEAN = 7;
+	private static final byte STRING = 8;
+	private static final byte BYTES = 9;
+	private static final byte DECIMAL = 10;
+	private static final byte BIG_INTEGER = 11;
+	private static final byte DATE = 12;
+	private static final byte TIME = 13;
+	private static final byte TIMESTAMP = 14;
+	private static final byte SERIALIZED = 15;
+	
+	/**
+	 * Serialized values are limited to the JDK's own value and collection
+	 * types, so a tampered spill or cache file cannot instantiate arbitrary
+	 * classes.
+	 */
+	private static final Set<String> SERIALIZED_PACKAGES = Set.of("java.lang", "java.math", "java.time", "java.util", "java.sql");
+	private static final ObjectInputFilter SERIALIZED_FILTER = ObjectInputFilter.Config.createFilter(
+			"maxdepth=20;java.lang.*;java.math.*;java.time.*;java.util.*;java.sql.*;!*");
+	
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+	private final DataOutputStream output = new DataOutputStream(bytes);
+	
+	public ByteBuffer encode(Object[] values) throws IOException
+	{
+		bytes.reset();
+		for(var value : values)
+		{
+			write(value);
+		}
+		output.flush();
+		
+		return ByteBuffer.wrap(bytes.toByteArray());
+	}
+	
+	private void write(Object value) throws IOException
+	{
+		if(value == null)
+		{
+			output.writeByte(NULL);
+		}
+		else if(value instanceof Integer)
+		{
+			output.writeByte(INTEGER);
+			output.writeInt((Integer) value);
+		}
+		else if(value instanceof Long)
+		{
+			output.writeByte(LONG);
+			output.writeLong((Long) value);
+		}
+		else if(value instanceof Double)
+		{
+			output.writeByte(DOUBLE);
+			output.writeDouble((Double) value);
+		}
+		else if(value instanceof Float)
+		{
+			output.writeByte(FLOAT);
+			output.writeFloat((Float) value);
+		}
+		else if(value instanceof Short)
+		{
+			output.writeByte(SHORT);
+			output.writeShort((Short) value);
+		}
+		else if(value instanceof Byte)
+		{
+			output.writeByte(BYTE);
+			output.writeByte((Byte) value);
+		}
+		else if(value instanceof Boolean)
+		{
+			output.writeByte(BOOLEAN);
+			output.writeBoolean((Boolean) value);
+		}
+		else if(value instanceof String)
+		{
+			output.writeByte(STRING);
+			writeBytes(((String) value).getBytes(StandardCharsets.UTF_8));
+		}
+		else if(value instanceof byte[])
+		{
+			output.writeByte(BYTES);
+			writeBytes((byte[]) value);
+		}
+		else if(value instanceof BigDecimal)
+		{
+			output.writeByte(DECIMAL);
+			writeBytes(value.toString().getBytes(StandardCharsets.US_ASCII));
+		}
+		else if(value instanceof BigInteger)
+		{
+			output.writeByte(BIG_INTEGER);
+			writeBytes(((BigInteger) value).toByteArray());
+		}
+		else if(value instanceof Date)
+		{
+			output.writeByte(DATE);
+			output.writeLong(((Date) value).getTime());
+		}
+		else if(value instanceof Time)
+		{
+			output.writeByte(TIME);
+			output.writeLong(((Time) value).getTime());
+		}
+		else if(value instanceof Timestamp)
+		{
+			output.writeByte(TIMESTAMP);
+			output.writeLong(((Timestamp) value).getTime());
+			output.writeInt(((Timestamp) value).getNanos());
+		}
+		else if(value instanceof Serializable && SERIALIZED_PACKAGES.contains(value.getClass().getPackageName()))
+		{
+			output.writeByte(SERIALIZED);
+			var serialized = new ByteArrayOutputStream();
+			try(var objectOutput = new ObjectOutputStream(serialized))
+			{
+				objectOutput.writeObject(value);
+			}
+			writeBytes(serialized.toByteArray());
+		}
+		else
+		{
+			throw new IOException(String.format("Cannot encode value of %s", value.getClass().getName()));
+		}
+	}
+	
+	private void writeBytes(byte[] value) throws IOException
+	{
+		output.writeInt(value.length);
+		output.write(value);
+	}
+	
+	/**
+	 * Decodes a row of the given width starting at the buffer's position,
+	 * leaving the position after the row.
+	 */
+	public static Object[] decode(ByteBuffer buffer, int columnCount) throws IOException
+	{
+		var values = new Object[columnCount];
+		for(var i = 0; i < columnCount; i++)
+		{
+			values[i] = read(buffer);
+		}
+		
+		return values;
+	}
+	
+	private static Object read(ByteBuffer buffer) throws IOException
+	{
+		var tag = buffer.get();
+		switch(tag)
+		{
+			case NULL:
+				return null;
+			case INTEGER:
+				return buffer.getInt();
+			case LONG:
+				return buffer.getLong();
+			case DOUBLE:
+				return buffer.getDouble();
+			case FLOAT:
+				return buffer.getFloat();
+			case SHORT:
+				return buffer.getShort();
+			case BYTE:
+				return buffer.get();
+			case BOOLEAN:
+				return buffer.get() != 0;
+			case STRING:
+				return new String(readBytes(buffer), StandardCharsets.UTF_8);
+			case BYTES:
+				return readBytes(buffer);
+			case DECIMAL:
+				return new BigDecimal(new String(readBytes(buffer), StandardCharsets.US_ASCII));
+			case BIG_INTEGER:
+				return new BigInteger(readBytes(buffer));
+			case DATE:
+				return new Date(buffer.getLong());
+			case TIME:
+				return new Time(buffer.getLong());
+			case TIMESTAMP:
+				var timestamp = new Timestamp(buffer.getLong());
+				timestamp.setNanos(buffer.getInt());
+				return timestamp;
+			case SERIALIZED:
+				try(var objectInput = new ObjectInputStream(new ByteArrayInputStream(readBytes(buffer))))
+				{
+					objectInput.setObjectInputFilter(SERIALIZED_FILTER);
+					return objectInput.readObject();
+				}
+				catch(ClassNotFoundException e)
+				{
+					throw new IOException(e);
+				}
+			default:
+				throw new IOException(String.format("Corrupt row: unknown value tag %d", tag));
+		}
+	}
+	
+	private static byte[] readBytes(ByteBuffer buffer)
+	{
+		var value = new byte[buffer.getInt()];
+		buffer.get(value);
+		return value;
+	}
+}
@@ -0,0 +1,21 @@
+package model;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+@FunctionalInterface
+public interface RowMapper<T>
+{
+	T map(ResultSet resultSet) throws SQLException;
+	
+	/**
+	 * Returns a mapper from rows of the given projection into instances of the
+	 * given record or POJO class, compiled once per class and projection.
+	 * Columns are matched to record components, setters or fields by name,
+	 * ignoring case and underscores.
+	 */
+	static <T> RowMapper<T> of(Class<T> type, Column<?>... projection)
+	{
+		return MapperCompiler.compile(type, projection);
+	}
+}
@@ -0,0 +1,248 @@
+package model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates a {@code <Name>Schema} class for every {@link Entity}, holding the
+ * table's columns, DDL, SQL templates and a straight-line row mapper, so none
+ * of them are computed at runtime. The generated all and first methods run
+ * SELECT_SQL, whose columns are in field order, straight through the mapper,
+ * and query reuses one model row. DDL is rendered by {@link Table} itself,
+ * so it matches what the runtime would produce.
+ */
+@SupportedAnnotationTypes("model.Entity")
+public class SchemaProcessor extends AbstractProcessor
+{
+	private static final Map<String, String> GETTERS = MapperCompiler.GETTERS.entrySet().stream()
+			.collect(Collectors.toMap(e -> e.getKey().getCanonicalName(), Map.Entry::getValue));
+	
+	@Override
+	public SourceVersion getSupportedSourceVersion()
+	{
+		return SourceVersion.latestSupported();
+	}
+	
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+	{
+		for(var type : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(Entity.class)))
+		{
+			try
+			{
+				generate(type);
+			}
+			catch(IOException | IllegalArgumentException e)
+			{
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), type);
+			}
+		}
+		
+		return true;
+	}
+	
+	private void generate(TypeElement type) throws IOException
+	{
+		var tableName = type.getAnnotation(Entity.class).name();
+		var isRecord = type.getKind() == ElementKind.RECORD;
+		var fields = new LinkedHashMap<VariableElement, EntityColumn>();
+		
+		for(var field : ElementFilter.fieldsIn(type.getEnclosedElements()))
+		{
+			var annotation = field.getAnnotation(EntityColumn.class);
+			if(annotation == null || field.getModifiers().contains(Modifier.STATIC))
+			{
+				continue;
+			}
+			if(!isRecord && (field.getModifiers().contains(Modifier.PRIVATE) || field.getModifiers().contains(Modifier.FINAL)))
+			{
+				throw new IllegalArgumentException(String.format("Mapped field %s must be neither private nor final", field.getSimpleName()));
+			}
+			
+			fields.put(field, annotation);
+		}
+		
+		if(fields.isEmpty())
+		{
+			throw new IllegalArgumentException(String.format("Entity %s has no @EntityColumn fields", type.getSimpleName()));
+		}
+		
+		var columns = new ArrayList<Column<?>>();
+		var names = new ArrayList<String>();
+		for(var entry : fields.entrySet())
+		{
+			var annotation = entry.getValue();
+			var name = annotation.name().isEmpty() ? entry.getKey().getSimpleName().toString() : annotation.name();
+			names.add(name);
+			columns.add(new Column<Object>(name, annotation.type(), annotation.length(), annotation.primaryKey(),
+					annotation.nullable(), annotation.autoIncrement(), null, false, annotation.indexed(), annotation.unique()));
+		}
+		
+		var schema = Table.generateSchemaStrings(tableName, columns.toArray(Column<?>[]::new));
+		var primaryKeys = new ArrayList<Integer>();
+		for(var i = 0; i < columns.size(); i++)
+		{
+			if(columns.get(i).isPrimaryKey())
+			{
+				primaryKeys.add(i);
+			}
+		}
+		
+		var packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+		var entityName = type.getQualifiedName().toString();
+		var schemaName = type.getSimpleName() + "Schema";
+		var selectSQL = String.format("SELECT %s from %s", String.join(", ", names), tableName);
+		var insertNames = columns.stream().filter(c -> !c.isAutoIncrement()).map(Column::getName).collect(Collectors.toList());
+		
+		var source = new StringBuilder();
+		if(!packageName.isEmpty())
+		{
+			source.append(String.format("package %s;\n\n", packageName));
+		}
+		source.append("import java.sql.SQLException;\n")
+			  .append("import java.util.ArrayList;\n")
+			  .append("import java.util.List;\n")
+			  .append("import java.util.Optional;\n\n")
+			  .append("import model.Column;\n")
+			  .append("import model.Database;\n")
+			  .append("import model.Query;\n")
+			  .append("import model.RowMapper;\n")
+			  .append("import model.Table;\n\n")
+			  .append(String.format("public final class %s\n{\n", schemaName))
+			  .append(String.format("\tpublic static final String TABLE_NAME = %s;\n", literal(tableName)))
+			  .append(String.format("\tpublic static final String TABLE_SQL = %s;\n", literal(schema[Table.TABLE_STRING])))
+			  .append(String.format("\tpublic static final String CREATE_SQL = %s;\n", literal(schema[Table.CREATE_TABLE_STRING])))
+			  .append(String.format("\tpublic static final String DROP_SQL = %s;\n", literal(schema[Table.DROP_TABLE_STRING])))
+			  .append(String.format("\tpublic static final String SELECT_SQL = %s;\n", literal(selectSQL)))
+			  .append(String.format("\tpublic static final String INSERT_SQL = %s;\n", literal(String.format("INSERT INTO %s (%s)\nVALUES (%s)",
+					  tableName, String.join(", ", insertNames), String.join(", ", insertNames.stream().map(n -> "?").toArray(String[]::new))))));
+		if(!primaryKeys.isEmpty())
+		{
+			source.append(String.format("\tpublic static final String SELECT_BY_ID_SQL = %s;\n", literal(String.format("%s WHERE %s", selectSQL,
+					String.join(" AND ", primaryKeys.stream().map(i -> names.get(i) + " = ?").toArray(String[]::new))))));
+		}
+		source.append(String.format("\tpublic static final RowMapper<%s> MAPPER = %s;\n", entityName, mapper(type, isRecord, fields)))
+			  .append(String.format("\tprivate static final int[] PRIMARY_KEYS = {%s};\n\n", 
+					  String.join(", ", primaryKeys.stream().map(String::valueOf).toArray(String[]::new))))
+			  .append("\tprivate static final Table MODEL;\n\n")
+			  .append("\tstatic\n\t{\n\t\tTable.registerSchema(TABLE_NAME, TABLE_SQL);\n\t\tMODEL = newTable();\n\t}\n\n")
+			  .append(String.format("\tprivate %s()\n\t{\n\t}\n\n", schemaName))
+			  .append("\tpublic static Column<?>[] columns()\n\t{\n\t\treturn new Column<?>[] {\n");
+		for(var i = 0; i < columns.size(); i++)
+		{
+			var column = columns.get(i);
+			source.append(String.format("\t\t\tnew Column<>(%s, %d, %d, %b, %b, %b, null, false, %b, %b)%s\n", literal(column.getName()), column.getType(),
+					column.getLength(), column.isPrimaryKey(), column.isNullable(), column.isAutoIncrement(), column.isIndexed(), column.isUnique(),
+					i < columns.size() - 1 ? "," : ""));
+		}
+		source.append("\t\t};\n\t}\n\n")
+			  .append("\tpublic static Table newTable()\n\t{\n\t\treturn new Table(TABLE_NAME, PRIMARY_KEYS, columns());\n\t}\n\n")
+			  .append("\tpublic static Query query(Database database)\n\t{\n\t\treturn new Query(database, MODEL);\n\t}\n\n")
+			  .append(String.format("\tpublic static List<%s> all(Database database) throws SQLException\n\t{\n", entityName))
+			  .append(String.format("\t\tvar rows = new ArrayList<%s>();\n", entityName))
+			  .append("\t\tfor(var shard : database.getShards())\n\t\t{\n")
+			  .append("\t\t\ttry(var connection = shard.getConnection();\n")
+			  .append("\t\t\t\tvar statement = connection.prepareStatement(SELECT_SQL);\n")
+			  .append("\t\t\t\tvar results = statement.executeQuery())\n\t\t\t{\n")
+			  .append("\t\t\t\twhile(results.next())\n\t\t\t\t{\n\t\t\t\t\trows.add(MAPPER.map(results));\n\t\t\t\t}\n")
+			  .append("\t\t\t}\n\t\t}\n\t\treturn rows;\n\t}\n\n")
+			  .append(String.format("\tpublic static Optional<%s> first(Database database) throws SQLException\n\t{\n", entityName))
+			  .append("\t\tfor(var shard : database.getShards())\n\t\t{\n")
+			  .append("\t\t\ttry(var connection = shard.getConnection();\n")
+			  .append("\t\t\t\tvar statement = connection.prepareStatement(SELECT_SQL))\n\t\t\t{\n")
+			  .append("\t\t\t\tstatement.setMaxRows(1);\n")
+			  .append("\t\t\t\ttry(var results = statement.executeQuery())\n\t\t\t\t{\n")
+			  .append("\t\t\t\t\tif(results.next())\n\t\t\t\t\t{\n\t\t\t\t\t\treturn Optional.of(MAPPER.map(results));\n\t\t\t\t\t}\n")
+			  .append("\t\t\t\t}\n\t\t\t}\n\t\t}\n\t\treturn Optional.empty();\n\t}\n")
+			  .append("}\n");
+		
+		var qualifiedName = packageName.isEmpty() ? schemaName : packageName + "." + schemaName;
+		try(var writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter())
+		{
+			writer.write(source.toString());
+		}
+	}
+	
+	private String mapper(TypeElement type, boolean isRecord, Map<VariableElement, EntityColumn> fields)
+	{
+		var entityName = type.getQualifiedName().toString();
+		var positions = new LinkedHashMap<VariableElement, Integer>();
+		var position = 1;
+		for(var field : fields.keySet())
+		{
+			positions.put(field, position++);
+		}
+		
+		if(isRecord)
+		{
+			var arguments = new ArrayList<String>();
+			for(var component : type.getRecordComponents())
+			{
+				var field = fields.keySet().stream()
+								  .filter(f -> f.getSimpleName().equals(component.getSimpleName()))
+								  .findFirst();
+				arguments.add(field.isPresent() ? read(field.get(), positions.get(field.get())) : defaultValue(component.asType().toString()));
+			}
+			return String.format("resultSet -> new %s(%s)", entityName, String.join(", ", arguments));
+		}
+		
+		var body = new StringBuilder(String.format("resultSet -> {\n\t\tvar entity = new %s();\n", entityName));
+		for(var entry : positions.entrySet())
+		{
+			body.append(String.format("\t\tentity.%s = %s;\n", entry.getKey().getSimpleName(), read(entry.getKey(), entry.getValue())));
+		}
+		return body.append("\t\treturn entity;\n\t}").toString();
+	}
+	
+	private String read(VariableElement field, int position)
+	{
+		var typeName = processingEnv.getTypeUtils().erasure(field.asType()).toString();
+		var getter = GETTERS.get(typeName);
+		if(getter != null)
+		{
+			return String.format("resultSet.%s(%d)", getter, position);
+		}
+		
+		return String.format("resultSet.getObject(%d, %s.class)", position, typeName);
+	}
+	
+	private static String defaultValue(String typeName)
+	{
+		switch(typeName)
+		{
+			case "boolean":
+				return "false";
+			case "int":
+			case "long":
+			case "double":
+			case "float":
+			case "short":
+			case "byte":
+				return String.format("(%s) 0", typeName);
+			case "char":
+				return "'\\0'";
+			default:
+				return "null";
+		}
+	}
+	
+	private static String literal(String value)
+	{
+		return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + '"';
+	}
+}
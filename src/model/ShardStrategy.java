@@ -0,0 +1,50 @@
+package model;
+
+public interface ShardStrategy
+{
+	int shardFor(Object[] keyValues, int shardCount);
+	
+	static ShardStrategy hash()
+	{
+		return (keyValues, shardCount) -> {
+			var hash = 1;
+			for(var value : keyValues)
+			{
+				hash = 31 * hash + Values.hash(value);
+			}
+			hash *= 0x9E3779B9;
+			return Math.floorMod(hash ^ (hash >>> 16), shardCount);
+		};
+	}
+	
+	/**
+	 * Routes by the first primary key value: shard i holds the values below
+	 * upperBounds[i], and the last shard holds everything else.
+	 */
+	static ShardStrategy ranges(Object... upperBounds)
+	{
+		for(var i = 1; i < upperBounds.length; i++)
+		{
+			if(Values.compare(upperBounds[i - 1], upperBounds[i]) >= 0)
+			{
+				throw new IllegalArgumentException("Range bounds must be strictly increasing");
+			}
+		}
+		
+		return (keyValues, shardCount) -> {
+			if(shardCount != upperBounds.length + 1)
+			{
+				throw new IllegalStateException(String.format("%d range bounds require %d shards", upperBounds.length, upperBounds.length + 1));
+			}
+			
+			for(var i = 0; i < upperBounds.length; i++)
+			{
+				if(Values.compare(keyValues[0], upperBounds[i]) < 0)
+				{
+					return i;
+				}
+			}
+			return upperBounds.length;
+		};
+	}
+}
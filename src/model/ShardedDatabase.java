@@ -0,0 +1,78 @@
+package model;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Spreads a table's rows over several databases by primary key. Rows are
+ * written to and fetched by key from the shard the strategy picks, and
+ * queries run on every shard with their results merged. A sharded database
+ * has no connection of its own: {@link #getConnection()} always throws, so
+ * code that connects directly must first pick a shard with {@link #route}
+ * or {@link #getShards()}.
+ */
+public class ShardedDatabase extends Database
+{
+	private final List<Database> shards;
+	private final ShardStrategy strategy;
+	
+	public ShardedDatabase(ShardStrategy strategy, Database... shards)
+	{
+		super(first(shards).getURL(), shards[0].getUsername(), shards[0].getPassword());
+		this.strategy = Objects.requireNonNull(strategy);
+		this.shards = List.of(shards);
+	}
+	
+	private static Database first(Database[] shards)
+	{
+		if(shards.length == 0)
+		{
+			throw new IllegalArgumentException("A sharded database needs at least one shard");
+		}
+		
+		return shards[0];
+	}
+	
+	@Override
+	public List<Database> getShards()
+	{
+		return shards;
+	}
+	
+	public ShardStrategy getStrategy()
+	{
+		return strategy;
+	}
+	
+	@Override
+	public Database route(Object... keyValues)
+	{
+		if(Arrays.stream(keyValues).anyMatch(Objects::isNull))
+		{
+			throw new IllegalStateException("Cannot route to a shard without every primary key value");
+		}
+		
+		return shards.get(strategy.shardFor(keyValues, shards.size()));
+	}
+	
+	@Override
+	public Database route(Table row)
+	{
+		return route(Arrays.stream(row.getPrimaryKeys()).map(Column::getValue).toArray());
+	}
+	
+	@Override
+	public Connection getConnection() throws SQLException
+	{
+		throw new SQLException("A sharded database must be routed to a shard before connecting");
+	}
+	
+	@Override
+	public boolean canConnect()
+	{
+		return shards.stream().allMatch(Database::canConnect);
+	}
+}
@@ -0,0 +1,230 @@
+package model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Function;
+
+/**
+ * A read-only list of query results that keeps rows on the heap up to a
+ * memory budget and spills the rest to a temporary file, read back through
+ * memory-mapped buffers. Rows are decoded on every access, so changes made to
+ * a returned row are not kept by the list.
+ */
+public class SpillingList<T> extends AbstractList<T> implements RandomAccess, AutoCloseable
+{
+	private static final long SEGMENT_SIZE = 1L << 30;
+	private static final int ROW_OVERHEAD = 16;
+	
+	private final long memoryBudget;
+	private final int columnCount;
+	private final Function<Object[], T> decoder;
+	private final RowCodec codec;
+	private final List<Object[]> heap;
+	private long heapBytes;
+	
+	private Path file;
+	private FileChannel channel;
+	private ByteBuffer writeBuffer;
+	private long[] offsets;
+	private int spilled;
+	private long fileSize;
+	private final List<Long> segmentStarts;
+	private final List<MappedByteBuffer> segments;
+	
+	SpillingList(long memoryBudget, int columnCount, Function<Object[], T> decoder)
+	{
+		this.memoryBudget = memoryBudget;
+		this.columnCount = columnCount;
+		this.decoder = decoder;
+		codec = new RowCodec();
+		heap = new ArrayList<Object[]>();
+		offsets = new long[0];
+		segmentStarts = new ArrayList<Long>();
+		segments = new ArrayList<MappedByteBuffer>();
+	}
+	
+	void append(Object[] values) throws IOException
+	{
+		if(channel == null)
+		{
+			var size = heapSize(values);
+			if(heapBytes + size <= memoryBudget)
+			{
+				heap.add(values);
+				heapBytes += size;
+				return;
+			}
+		}
+		
+		var encoded = codec.encode(values);
+		var length = encoded.remaining();
+		
+		if(channel == null)
+		{
+			file = Files.createTempFile("query-results", ".rows");
+			channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			writeBuffer = ByteBuffer.allocateDirect(1 << 16);
+			segmentStarts.add(0L);
+		}
+		
+		if(Integer.BYTES + length > SEGMENT_SIZE)
+		{
+			throw new IOException("Row is too large to spill");
+		}
+		if(fileSize + Integer.BYTES + length - segmentStarts.get(segmentStarts.size() - 1) > SEGMENT_SIZE)
+		{
+			segmentStarts.add(fileSize);
+		}
+		
+		if(spilled == offsets.length)
+		{
+			offsets = Arrays.copyOf(offsets, Math.max(16, offsets.length * 2));
+		}
+		offsets[spilled++] = fileSize;
+		
+		if(writeBuffer.remaining() < Integer.BYTES)
+		{
+			flush();
+		}
+		writeBuffer.putInt(length);
+		while(encoded.hasRemaining())
+		{
+			if(!writeBuffer.hasRemaining())
+			{
+				flush();
+			}
+			var chunk = encoded.slice();
+			chunk.limit(Math.min(chunk.remaining(), writeBuffer.remaining()));
+			writeBuffer.put(chunk);
+			encoded.position(encoded.position() + chunk.limit());
+		}
+		fileSize += Integer.BYTES + length;
+	}
+	
+	/**
+	 * Estimates the heap footprint of a row from its values' types and
+	 * lengths, without encoding it.
+	 */
+	private long heapSize(Object[] values)
+	{
+		var size = ROW_OVERHEAD * (long) columnCount;
+		for(var value : values)
+		{
+			if(value instanceof String)
+			{
+				size += 40 + ((String) value).length();
+			}
+			else if(value instanceof byte[])
+			{
+				size += ROW_OVERHEAD + ((byte[]) value).length;
+			}
+			else if(value instanceof BigDecimal || value instanceof BigInteger)
+			{
+				size += 48;
+			}
+			else if(value != null)
+			{
+				size += ROW_OVERHEAD;
+			}
+		}
+		
+		return size;
+	}
+	
+	void finish() throws IOException
+	{
+		if(channel == null)
+		{
+			return;
+		}
+		
+		flush();
+		for(var i = 0; i < segmentStarts.size(); i++)
+		{
+			var start = segmentStarts.get(i);
+			var end = i + 1 < segmentStarts.size() ? segmentStarts.get(i + 1) : fileSize;
+			segments.add(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+		}
+		writeBuffer = null;
+	}
+	
+	private void flush() throws IOException
+	{
+		writeBuffer.flip();
+		while(writeBuffer.hasRemaining())
+		{
+			channel.write(writeBuffer);
+		}
+		writeBuffer.clear();
+	}
+	
+	public boolean isSpilled()
+	{
+		return channel != null;
+	}
+	
+	@Override
+	public T get(int index)
+	{
+		if(index < 0 || index >= size())
+		{
+			throw new IndexOutOfBoundsException(index);
+		}
+		if(index < heap.size())
+		{
+			return decoder.apply(heap.get(index).clone());
+		}
+		
+		var offset = offsets[index - heap.size()];
+		var segment = segmentStarts.size() - 1;
+		while(segmentStarts.get(segment) > offset)
+		{
+			segment--;
+		}
+		
+		var buffer = segments.get(segment).duplicate();
+		buffer.position((int) (offset - segmentStarts.get(segment)) + Integer.BYTES);
+		try
+		{
+			return decoder.apply(RowCodec.decode(buffer, columnCount));
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	@Override
+	public int size()
+	{
+		return heap.size() + spilled;
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		segments.clear();
+		heap.clear();
+		spilled = 0;
+		
+		if(channel != null)
+		{
+			channel.close();
+			Files.deleteIfExists(file);
+			channel = null;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The state of one statement passed to each {@link StatementInterceptor}:
+ * its SQL, the parameters bound so far and any tags interceptors attach.
+ */
+public class StatementContext
+{
+	private final Database database;
+	private final String sql;
+	private final List<Object> parameters;
+	private final List<List<Object>> batch;
+	private final Map<String, Object> tags;
+	
+	StatementContext(Database database, String sql)
+	{
+		this.database = database;
+		this.sql = sql;
+		parameters = new ArrayList<Object>();
+		batch = new ArrayList<List<Object>>();
+		tags = new HashMap<String, Object>();
+	}
+	
+	public Database getDatabase()
+	{
+		return database;
+	}
+	
+	public String getSQL()
+	{
+		return sql;
+	}
+	
+	public List<Object> getParameters()
+	{
+		return Collections.unmodifiableList(parameters);
+	}
+	
+	/**
+	 * The parameters of each row added with addBatch since the last batch
+	 * execution.
+	 */
+	public List<List<Object>> getBatch()
+	{
+		return Collections.unmodifiableList(batch);
+	}
+	
+	public StatementContext tag(String key, Object value)
+	{
+		tags.put(key, value);
+		return this;
+	}
+	
+	public Object getTag(String key)
+	{
+		return tags.get(key);
+	}
+	
+	public Map<String, Object> getTags()
+	{
+		return Collections.unmodifiableMap(tags);
+	}
+	
+	void setParameter(int index, Object value)
+	{
+		while(parameters.size() < index)
+		{
+			parameters.add(null);
+		}
+		parameters.set(index - 1, value);
+	}
+	
+	void clearParameters()
+	{
+		parameters.clear();
+	}
+	
+	void addBatch()
+	{
+		batch.add(new ArrayList<Object>(parameters));
+	}
+	
+	void clearBatch()
+	{
+		batch.clear();
+	}
+}
@@ -0,0 +1,59 @@
+package model;
+
+import java.time.Duration;
+
+/**
+ * Observes, and may alter, the JDBC work done on connections from a
+ * {@link Database}. Interceptors are registered with
+ * {@link Database#addInterceptor(StatementInterceptor)} and called in
+ * registration order on the thread doing the work.
+ */
+public interface StatementInterceptor
+{
+	default void onConnect(Database database, Duration elapsed)
+	{
+	}
+	
+	/**
+	 * Called before a statement is prepared or run. Returns the SQL to use in
+	 * its place, for example with a hint or comment added.
+	 */
+	default String onPrepare(Database database, String sql)
+	{
+		return sql;
+	}
+	
+	default void onBind(StatementContext context, int index, Object value)
+	{
+	}
+	
+	/**
+	 * Called before a statement executes. Returning a non-null value skips
+	 * the execution and returns that value instead, so it must match the
+	 * execute method's result: a ResultSet, an update count, an int[] for
+	 * batches or a Boolean for execute.
+	 */
+	default Object beforeExecute(StatementContext context)
+	{
+		return null;
+	}
+	
+	/**
+	 * Called after a statement executes, with the exception it threw, if any.
+	 */
+	default void afterExecute(StatementContext context, Duration elapsed, Throwable failure)
+	{
+	}
+	
+	/**
+	 * Called once a statement's results are closed or exhausted, with the
+	 * number of rows read and the time spent reading them.
+	 */
+	default void onFetch(StatementContext context, int rows, Duration elapsed)
+	{
+	}
+	
+	default void onCommit(Database database, Duration elapsed, Throwable failure)
+	{
+	}
+}
@@ -1,23 +1,46 @@
 package model;
 
-import java.math.BigInteger;
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 public class Table
 {
-	private static final int TABLE_STRING = 0;
-	private static final int CREATE_TABLE_STRING = 1;
-	private static final int DROP_TABLE_STRING = 2;
+	static final int TABLE_STRING = 0;
+	static final int CREATE_TABLE_STRING = 1;
+	static final int DROP_TABLE_STRING = 2;
 	private static final Map<Integer, String[]> tableStrings = new HashMap<Integer, String[]>();
 	private static final ReentrantReadWriteLock tableStringsLocks = new ReentrantReadWriteLock();
+	private static final Object UNWRITTEN = new Object();
+	private static final int REFRESH_BATCH_SIZE = 500;
 	
 	private final String tableName;
 	private boolean existsCache;
@@ -29,8 +52,32 @@ public class Table
 	private final Map<String, Column<?>> namesToColumns;
 	
 	private boolean inDatabase;
+	private Set<String> unloaded;
+	private LazyLoader lazyLoader;
+	
+	public static void registerSchema(String tableName, String tableString)
+	{
+		tableStringsLocks.writeLock().lock();
+		try
+		{
+			tableStrings.putIfAbsent(tableName.hashCode(), generateTableStrings(tableName, tableString));
+		}
+		finally
+		{
+			tableStringsLocks.writeLock().unlock();
+		}
+	}
 	
 	public Table(String tableName, Column<?>... columns)
+	{
+		this(tableName, IntStream.range(0, columns.length).filter(i -> columns[i].isPrimaryKey()).toArray(), columns);
+	}
+	
+	/**
+	 * Creates a row whose primary key positions are already known, as done by
+	 * generated schema classes.
+	 */
+	public Table(String tableName, int[] primaryKeyIndexes, Column<?>... columns)
 	{
 		this.tableName = tableName;
 		currentColumns = columns;
@@ -38,26 +85,29 @@ public class Table
 		oldValues = new Object[currentColumns.length];
 		updateOldValues();
 		
-		primaryKeys = Arrays.stream(currentColumns)
-									.filter(c -> c.isPrimaryKey())
-									.toArray(Column[]::new);
-		
-		namesToColumns = Arrays.stream(currentColumns)
-									   .collect(Collectors.toMap(Column::getName, k -> k));
+		primaryKeys = new Column<?>[primaryKeyIndexes.length];
+		for(var i = 0; i < primaryKeyIndexes.length; i++)
+		{
+			primaryKeys[i] = currentColumns[primaryKeyIndexes[i]];
+		}
 		
+		namesToColumns = new HashMap<String, Column<?>>();
 		foreignKeys = new HashMap<String, List<ForeignKey<?>>>();
 		
-		Arrays.stream(currentColumns)
-					  .filter(column -> column.isForeignKey())
-					  .map(entry -> entry.getForeignKey())
-					  .forEach(key -> {
-						 var value = foreignKeys.putIfAbsent(key.getTableReference().getName(), new LinkedList<ForeignKey<?>>());
-						 if(value == null)
-						 {
-							 value = foreignKeys.get(key.getTableReference().getName());
-						 }
-						 value.add(key);
-					  });
+		for(var column : currentColumns)
+		{
+			if(namesToColumns.put(column.getName(), column) != null)
+			{
+				throw new IllegalStateException(String.format("Duplicate column %s", column.getName()));
+			}
+			
+			if(column.isForeignKey())
+			{
+				var key = column.getForeignKey();
+				foreignKeys.computeIfAbsent(key.getTableReference().getName(), k -> new LinkedList<ForeignKey<?>>())
+						   .add(key);
+			}
+		}
 		
 		tableStringsLocks.readLock().lock();
 		if(!tableStrings.containsKey(hashCode()))
@@ -67,9 +117,7 @@ public class Table
 			tableStringsLocks.writeLock().lock();
 			try
 			{
-				tableStrings.put(hashCode(), new String[] {tableString, 
-						String.format("CREATE TABLE IF NOT EXISTS %s", tableString),
-						String.format("DROP TABLE IF EXISTS\n%s\nCASCADE", tableName)});
+				tableStrings.put(hashCode(), generateTableStrings(tableName, tableString));
 			}
 			finally
 			{
@@ -82,6 +130,13 @@ public class Table
 		}
 	}
 	
+	private static String[] generateTableStrings(String tableName, String tableString)
+	{
+		return new String[] {tableString, 
+				String.format("CREATE TABLE IF NOT EXISTS %s", tableString),
+				String.format("DROP TABLE IF EXISTS\n%s\nCASCADE", tableName)};
+	}
+	
 	@Override
 	public int hashCode()
 	{
@@ -103,6 +158,11 @@ public class Table
 		return currentColumns;
 	}
 	
+	public Column<?>[] getPrimaryKeys()
+	{
+		return primaryKeys;
+	}
+	
 	public Column<?> getColumn(String name)
 	{
 		return namesToColumns.get(name);
@@ -116,9 +176,81 @@ public class Table
 	
 	public Object getColumnValue(String name)
 	{
+		if(isUnloaded(name))
+		{
+			try
+			{
+				lazyLoader.load(this, name);
+			}
+			catch(SQLException e)
+			{
+				throw new RuntimeException(e.getMessage(), e);
+			}
+		}
+		
 		return getColumn(name).getValue();
 	}
 	
+	Table copy()
+	{
+		var columns = new Column<?>[currentColumns.length];
+		for(var i = 0; i < columns.length; i++)
+		{
+			columns[i] = currentColumns[i].cloneWithValue(getColumnValue(currentColumns[i].getName()));
+		}
+		
+		var row = new Table(tableName, columns);
+		row.inDatabase = inDatabase;
+		return row;
+	}
+	
+	/**
+	 * Makes every column count as changed, so the next commit or upsert writes
+	 * the whole row.
+	 */
+	void markAllChanged()
+	{
+		Arrays.fill(oldValues, UNWRITTEN);
+	}
+	
+	void deferColumns(LazyLoader loader, Collection<String> names)
+	{
+		lazyLoader = loader;
+		unloaded = ConcurrentHashMap.newKeySet();
+		unloaded.addAll(names);
+	}
+	
+	boolean isUnloaded(String name)
+	{
+		return unloaded != null && unloaded.contains(name);
+	}
+	
+	boolean isLoaded()
+	{
+		return unloaded == null || unloaded.isEmpty();
+	}
+	
+	/**
+	 * Fills in a lazily loaded value, unless the column has been written
+	 * since the load was started.
+	 */
+	void setLoadedValue(String name, Object value)
+	{
+		if(unloaded == null || !unloaded.remove(name))
+		{
+			return;
+		}
+		
+		for(var i = 0; i < currentColumns.length; i++)
+		{
+			if(currentColumns[i].getName().equals(name) && currentColumns[i].getValue() == null)
+			{
+				currentColumns[i].setValue(value);
+				oldValues[i] = value;
+			}
+		}
+	}
+	
 	@SuppressWarnings("unchecked")
 	public <T> T getColumnValue(Column<T> column)
 	{
@@ -128,6 +260,10 @@ public class Table
 	public void setColumnValue(String name, Object value)
 	{
 		getColumn(name).setValue(value);
+		if(unloaded != null)
+		{
+			unloaded.remove(name);
+		}
 	}
 	
 	public <T> void setColumnValue(Column<T> column, T value)
@@ -210,7 +346,9 @@ public class Table
 		
 		String sql = generateUpdateString(different);
 		
-		try(var connection = db.getConnection())
+		var resources = new LinkedList<AutoCloseable>();
+		
+		try(var connection = db.route(this).getConnection())
 		{
 			var statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
 			var difIt = different.iterator();
@@ -218,7 +356,7 @@ public class Table
 			
 			while(difIt.hasNext())
 			{
-				statement.setObject(count++, difIt.next().getValue());
+				bind(statement, count++, difIt.next(), resources);
 			}
 			
 			if(!needsAutoGenerated()
@@ -226,7 +364,7 @@ public class Table
 			{
 				for(var key : primaryKeys)
 				{
-					statement.setObject(count++, key.getValue());
+					key.bind(statement, count++);
 				}
 			}
 			
@@ -238,21 +376,111 @@ public class Table
 				for(var key : primaryKeys)
 				{
 					results.next();
-					Object value = results.getObject(1);
-					if(value instanceof BigInteger)
+					key.setValue(key.read(results, 1));
+				}
+			}
+		}
+		finally
+		{
+			closeAll(resources);
+		}
+		
+		updateOldValues();
+		inDatabase = true;
+	}
+	
+	public void upsert(Database db) throws SQLException
+	{
+		upsertAll(db, List.of(this));
+	}
+	
+	public static void upsertAll(Database db, Collection<? extends Table> rows) throws SQLException
+	{
+		var batches = new LinkedHashMap<Database, Map<String, List<Table>>>();
+		var unensured = new LinkedHashMap<String, List<Table>>();
+		
+		for(var row : rows)
+		{
+			if(row.primaryKeys.length == 0)
+			{
+				throw new IllegalStateException("Cannot upsert with no primary keys");
+			}
+			if(!row.existsCache)
+			{
+				unensured.computeIfAbsent(row.tableName, k -> new LinkedList<Table>()).add(row);
+			}
+		}
+		
+		for(var group : unensured.values())
+		{
+			group.get(0).createTable(db);
+			for(var row : group)
+			{
+				row.existsCache = true;
+			}
+		}
+		
+		for(var row : rows)
+		{
+			if(row.needsAutoGenerated())
+			{
+				row.commit(db);
+				continue;
+			}
+			
+			var shard = db.route(row);
+			var sql = shard.getDialect().generateUpsertString(row.tableName, row.getPrimaryKeyNames(),
+					row.getUpsertColumns().stream().map(Column::getName).collect(Collectors.toList()));
+			batches.computeIfAbsent(shard, k -> new LinkedHashMap<String, List<Table>>())
+				   .computeIfAbsent(sql, k -> new LinkedList<Table>())
+				   .add(row);
+		}
+		
+		for(var shardBatches : batches.entrySet())
+		{
+			try(var connection = shardBatches.getKey().getConnection())
+			{
+				for(var batch : shardBatches.getValue().entrySet())
+				{
+					var statement = connection.prepareStatement(batch.getKey());
+					var resources = new LinkedList<AutoCloseable>();
+					try
+					{
+						for(var row : batch.getValue())
+						{
+							var count = 1;
+							for(var column : row.getUpsertColumns())
+							{
+								bind(statement, count++, column, resources);
+							}
+							statement.addBatch();
+						}
+						
+						statement.executeBatch();
+					}
+					finally
 					{
-						key.setValue(BigInteger.class.cast(value).intValue());
+						closeAll(resources);
 					}
-					else
+					
+					for(var row : batch.getValue())
 					{
-						key.setValue(value);
+						row.updateOldValues();
+						row.inDatabase = true;
 					}
 				}
 			}
 		}
-		
-		updateOldValues();
-		inDatabase = true;
+	}
+	
+	public long bulkLoad(Database db, Stream<Object[]> rows) throws SQLException
+	{
+		return new BulkLoader(this).load(db, rows);
+	}
+	
+	public long bulkLoad(Database db, Path csv) throws SQLException, IOException
+	{
+		return new BulkLoader(this).load(db, csv);
 	}
 	
 	public boolean update(Database db) throws SQLException
@@ -263,32 +491,374 @@ public class Table
 			throw new IllegalStateException("Cannot update with no primary keys");
 		}
 		
-		try(var connection = db.getConnection())
+		var selectWithIDQuery = query(db.route(this)).remote();
+		for(var primaryKey : primaryKeys)
 		{
-			var selectWithIDQuery = query(db);
-			for(var primaryKey : primaryKeys)
+			selectWithIDQuery.filter(primaryKey);
+		}
+		
+		var option = selectWithIDQuery.first();
+		if(option.isEmpty())
+		{
+			return false;
+		}
+		
+		return refreshFrom(option.get());
+	}
+	
+	/**
+	 * Refreshes many rows of one table with as few queries as possible and
+	 * returns the rows whose values changed. Rows no longer in the database
+	 * are left as they are.
+	 */
+	public static List<Table> refreshAll(Database db, Collection<? extends Table> rows) throws SQLException
+	{
+		return refreshAll(db, rows, null);
+	}
+	
+	/**
+	 * Refreshes many rows of one table, first reading only the primary key
+	 * and version of each so that full rows are fetched just for the rows
+	 * whose version differs from the one they hold.
+	 */
+	public static List<Table> refreshAll(Database db, Collection<? extends Table> rows, Column<?> version) throws SQLException
+	{
+		var shards = new HashMap<Database, Map<String, List<Table>>>();
+		for(var row : rows)
+		{
+			if(row.primaryKeys.length == 0 || Arrays.stream(row.primaryKeys).anyMatch(k -> k.getValue() == null))
 			{
-				selectWithIDQuery.filter(primaryKey);
+				throw new IllegalStateException("Cannot refresh rows without primary key values");
 			}
 			
-			var option = selectWithIDQuery.first();
-			Table results;
+			shards.computeIfAbsent(db.route(row), k -> new LinkedHashMap<String, List<Table>>())
+				  .computeIfAbsent(row.getName(), k -> new ArrayList<Table>())
+				  .add(row);
+		}
+		
+		var changed = new ArrayList<Table>();
+		for(var shard : shards.entrySet())
+		{
+			for(var group : shard.getValue().values())
+			{
+				for(var offset = 0; offset < group.size(); offset += REFRESH_BATCH_SIZE)
+				{
+					var batch = group.subList(offset, Math.min(group.size(), offset + REFRESH_BATCH_SIZE));
+					var stale = version == null ? batch : stale(shard.getKey(), batch, version);
+					if(stale.isEmpty())
+					{
+						continue;
+					}
+					
+					var byKey = new HashMap<Key, Table>();
+					stale.forEach(row -> byKey.put(Key.of(row.primaryKeys), row));
+					var prototype = stale.get(0);
+					var query = prototype.query(shard.getKey()).remote()
+										 .filter(FilterExpression.primaryKeyIn(prototype.primaryKeys, byKey.keySet()));
+					for(var result : query.all())
+					{
+						var row = byKey.get(Key.of(result.primaryKeys));
+						if(row != null && row.refreshFrom(result))
+						{
+							changed.add(row);
+						}
+					}
+				}
+			}
+		}
+		
+		return changed;
+	}
+	
+	private static List<Table> stale(Database shard, List<Table> batch, Column<?> version) throws SQLException
+	{
+		var prototype = batch.get(0);
+		var byKey = new HashMap<Key, Table>();
+		batch.forEach(row -> byKey.put(Key.of(row.primaryKeys), row));
+		var condition = FilterExpression.primaryKeyIn(prototype.primaryKeys, byKey.keySet());
+		var sql = String.format("SELECT %s, %s FROM %s WHERE %s", String.join(", ", prototype.getPrimaryKeyNames()),
+				version.getName(), prototype.getName(), condition);
+		
+		var stale = new ArrayList<Table>();
+		try(var connection = shard.getConnection())
+		{
+			var statement = connection.prepareStatement(sql);
+			condition.bind(statement, 1);
 			
-			if(option.isEmpty())
+			try(var results = statement.executeQuery())
 			{
-				return false;
+				while(results.next())
+				{
+					var keyValues = new Object[prototype.primaryKeys.length];
+					for(var i = 0; i < keyValues.length; i++)
+					{
+						keyValues[i] = prototype.primaryKeys[i].read(results, i + 1);
+					}
+					
+					var row = byKey.remove(new Key(keyValues));
+					if(row != null && !Values.equal(row.getColumnValue(version.getName()), version.read(results, keyValues.length + 1)))
+					{
+						stale.add(row);
+					}
+				}
 			}
-			else
+		}
+		
+		return stale;
+	}
+	
+	/**
+	 * Copies the values of a freshly selected copy of this row, keeping
+	 * columns the copy has not loaded, and returns whether any changed.
+	 */
+	private boolean refreshFrom(Table results)
+	{
+		for(var i = 0; i < currentColumns.length; i++)
+		{
+			var name = currentColumns[i].getName();
+			if(!results.isUnloaded(name))
+			{
+				currentColumns[i].setValue(results.getColumns()[i].getValue());
+				if(unloaded != null)
+				{
+					unloaded.remove(name);
+				}
+			}
+		}
+		
+		var hasChanged = !getChangedColumns().isEmpty();
+		updateOldValues();
+		
+		return hasChanged;
+	}
+	
+	/**
+	 * Opens the stored value of a binary large object column as a stream that
+	 * holds its own connection until closed, or returns null if the value is
+	 * null.
+	 */
+	public InputStream openBinaryStream(Database db, Column<?> column) throws SQLException
+	{
+		var connection = db.route(this).getConnection();
+		try
+		{
+			var resultSet = selectLargeObject(connection, column);
+			var stream = resultSet.getBinaryStream(1);
+			if(stream == null)
 			{
-				results = option.get();
+				connection.close();
+				return null;
 			}
 			
-			Arrays.parallelSetAll(this.currentColumns, (int i) -> results.getColumns()[i]);
-
-			var hasChanged = !getChangedColumns().isEmpty();
-			updateOldValues();
+			return new FilterInputStream(stream)
+			{
+				@Override
+				public void close() throws IOException
+				{
+					try
+					{
+						super.close();
+					}
+					finally
+					{
+						closeConnection(connection);
+					}
+				}
+			};
+		}
+		catch(SQLException | RuntimeException e)
+		{
+			connection.close();
+			throw e;
+		}
+	}
+	
+	public Reader openCharacterStream(Database db, Column<?> column) throws SQLException
+	{
+		var connection = db.route(this).getConnection();
+		try
+		{
+			var resultSet = selectLargeObject(connection, column);
+			var reader = resultSet.getCharacterStream(1);
+			if(reader == null)
+			{
+				connection.close();
+				return null;
+			}
+			
+			return new FilterReader(reader)
+			{
+				@Override
+				public void close() throws IOException
+				{
+					try
+					{
+						super.close();
+					}
+					finally
+					{
+						closeConnection(connection);
+					}
+				}
+			};
+		}
+		catch(SQLException | RuntimeException e)
+		{
+			connection.close();
+			throw e;
+		}
+	}
+	
+	public ReadableByteChannel openChannel(Database db, Column<?> column) throws SQLException
+	{
+		var stream = openBinaryStream(db, column);
+		return stream == null ? null : Channels.newChannel(stream);
+	}
+	
+	/**
+	 * Copies a binary large object column straight into a file, letting the
+	 * file channel pull from the driver's stream without an intermediate
+	 * array. Returns the number of bytes written.
+	 */
+	public long transferTo(Database db, Column<?> column, Path target) throws SQLException, IOException
+	{
+		try(var source = openChannel(db, column);
+			var destination = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			if(source == null)
+			{
+				return 0;
+			}
+			
+			var position = 0L;
+			var transferred = 0L;
+			while((transferred = destination.transferFrom(source, position, 1 << 20)) > 0)
+			{
+				position += transferred;
+			}
+			return position;
+		}
+	}
+	
+	/**
+	 * Streams new content into a large object column of this row. Values of
+	 * type Path, InputStream, Reader and ReadableByteChannel given to
+	 * setColumnValue are streamed the same way by commit and upsert.
+	 */
+	public void writeLargeObject(Database db, Column<?> column, Object source) throws SQLException
+	{
+		var sql = String.format("UPDATE %s\n"
+				+ "SET %s = ?\n"
+				+ "WHERE %s;", tableName, column.getName(), generateIDFilterString());
+		var resources = new LinkedList<AutoCloseable>();
+		
+		try(var connection = db.route(this).getConnection())
+		{
+			var statement = connection.prepareStatement(sql);
+			var index = 1;
+			bind(statement, index++, column.cloneWithValue(source), resources);
+			for(var primaryKey : primaryKeys)
+			{
+				primaryKey.bind(statement, index++);
+			}
 			
-			return hasChanged;
+			statement.executeUpdate();
+		}
+		finally
+		{
+			closeAll(resources);
+		}
+	}
+	
+	private ResultSet selectLargeObject(Connection connection, Column<?> column) throws SQLException
+	{
+		var statement = connection.prepareStatement(String.format("SELECT %s FROM %s WHERE %s", column.getName(), tableName,
+				generateIDFilterString()));
+		var index = 1;
+		for(var primaryKey : primaryKeys)
+		{
+			primaryKey.bind(statement, index++);
+		}
+		
+		var resultSet = statement.executeQuery();
+		if(!resultSet.next())
+		{
+			throw new SQLException(String.format("Row no longer exists in %s", tableName));
+		}
+		
+		return resultSet;
+	}
+	
+	private static void bind(PreparedStatement statement, int index, Column<?> column, List<AutoCloseable> resources) throws SQLException
+	{
+		var value = column.getValue();
+		
+		try
+		{
+			if(value instanceof Path)
+			{
+				var path = (Path) value;
+				if(column.isCharacterData())
+				{
+					var reader = Files.newBufferedReader(path);
+					resources.add(reader);
+					statement.setCharacterStream(index, reader);
+				}
+				else
+				{
+					var stream = Files.newInputStream(path);
+					resources.add(stream);
+					statement.setBinaryStream(index, stream, Files.size(path));
+				}
+			}
+			else if(value instanceof ReadableByteChannel)
+			{
+				var stream = Channels.newInputStream((ReadableByteChannel) value);
+				resources.add(stream);
+				statement.setBinaryStream(index, stream);
+			}
+			else if(value instanceof InputStream)
+			{
+				statement.setBinaryStream(index, (InputStream) value);
+			}
+			else if(value instanceof Reader)
+			{
+				statement.setCharacterStream(index, (Reader) value);
+			}
+			else
+			{
+				column.bind(statement, index, value);
+			}
+		}
+		catch(IOException e)
+		{
+			throw new SQLException(String.format("Could not open the content for %s", column.getName()), e);
+		}
+	}
+	
+	private static void closeAll(List<AutoCloseable> resources)
+	{
+		for(var resource : resources)
+		{
+			try
+			{
+				resource.close();
+			}
+			catch(Exception e)
+			{
+			}
+		}
+	}
+	
+	private static void closeConnection(Connection connection) throws IOException
+	{
+		try
+		{
+			connection.close();
+		}
+		catch(SQLException e)
+		{
+			throw new IOException(e);
 		}
 	}
 	
@@ -297,13 +867,13 @@ public class Table
 		var deleteSQL = String.format("DELETE FROM %s WHERE %s", getName(),
 			generateIDFilterString());
 		
-		try(var connection = db.getConnection())
+		try(var connection = db.route(this).getConnection())
 		{
 			var statement = connection.prepareStatement(deleteSQL);
 			var index = 1;
 			for(var primaryKey : primaryKeys)
 			{
-				statement.setObject(index++, primaryKey.getValue());
+				primaryKey.bind(statement, index++);
 			}
 			
 			statement.executeUpdate();
@@ -328,11 +898,104 @@ public class Table
 	
 	public void createTable(Database db) throws SQLException
 	{
-		try(var connection = db.getConnection())
+		for(var shard : db.getShards())
 		{
-			var statement = connection.prepareCall(getCreateSQL());
-			statement.executeUpdate();
-			existsCache = true;
+			try(var connection = shard.getConnection())
+			{
+				var statement = connection.prepareCall(getCreateSQL());
+				statement.executeUpdate();
+				createIndexes(connection, shard.getDialect(), db);
+			}
+		}
+		existsCache = true;
+	}
+	
+	/**
+	 * Returns the indexes declared for this table on the given database:
+	 * single-column indexes from its columns, indexes added with
+	 * {@link Database#addIndex(Index)} and, where the dialect does not index
+	 * them itself, foreign key columns.
+	 */
+	public List<Index> getIndexes(Database db)
+	{
+		return getIndexes(db, db.getDialect());
+	}
+	
+	private List<Index> getIndexes(Database db, Dialect dialect)
+	{
+		var indexes = new LinkedList<Index>();
+		for(var column : currentColumns)
+		{
+			if(column.isIndexed() && !(column.isPrimaryKey() && primaryKeys.length == 1))
+			{
+				indexes.add(new Index(tableName, column.getName()).isUnique(column.isUnique()));
+			}
+		}
+		
+		indexes.addAll(db.getIndexes(tableName));
+		
+		if(!dialect.indexesForeignKeys())
+		{
+			for(var keys : foreignKeys.values())
+			{
+				var columns = keys.stream().map(ForeignKey::getName).collect(Collectors.toList());
+				var primaryKeyNames = Arrays.stream(primaryKeys).map(Column::getName).collect(Collectors.toList());
+				if(!startsWith(primaryKeyNames, columns) && indexes.stream().noneMatch(i -> startsWith(i.getColumns(), columns)))
+				{
+					indexes.add(new Index(tableName, columns.toArray(String[]::new)));
+				}
+			}
+		}
+		
+		return indexes;
+	}
+	
+	private static boolean startsWith(List<String> columns, List<String> prefix)
+	{
+		return columns.size() >= prefix.size() && columns.subList(0, prefix.size()).equals(prefix);
+	}
+	
+	private void createIndexes(Connection connection, Dialect dialect, Database db) throws SQLException
+	{
+		var indexes = getIndexes(db, dialect);
+		if(indexes.isEmpty())
+		{
+			return;
+		}
+		
+		var existing = new HashSet<String>();
+		var metaData = connection.getMetaData();
+		for(var name : new HashSet<String>(List.of(tableName, tableName.toUpperCase(), tableName.toLowerCase())))
+		{
+			try(var results = metaData.getIndexInfo(null, null, name, false, true))
+			{
+				while(results.next())
+				{
+					var indexName = results.getString("INDEX_NAME");
+					if(indexName != null)
+					{
+						existing.add(indexName.toLowerCase());
+					}
+				}
+			}
+		}
+		
+		for(var index : indexes)
+		{
+			if(!existing.contains(index.getName().toLowerCase()))
+			{
+				try(var statement = connection.createStatement())
+				{
+					statement.executeUpdate(index.generateCreateString(dialect));
+				}
+				catch(SQLException e)
+				{
+					if(!dialect.isDuplicateObject(e))
+					{
+						throw e;
+					}
+				}
+			}
 		}
 	}
 	
@@ -342,22 +1005,32 @@ public class Table
 		{
 			createTable(db);
 		}
-		try(var connection = db.getConnection())
+		for(var shard : db.getShards())
 		{
-			var statement = connection.prepareCall(getDropSQL());
-			statement.executeUpdate();
-			existsCache = false;
+			try(var connection = shard.getConnection())
+			{
+				var statement = connection.prepareCall(getDropSQL());
+				statement.executeUpdate();
+			}
 		}
+		existsCache = false;
 	}
 	
 	public boolean exists(Database db) throws SQLException
 	{
-		try(var connection = db.getConnection())
+		for(var shard : db.getShards())
 		{
-			var metaData = connection.getMetaData();
-			var tableInfo = metaData.getTables(null, null, tableName, null);
-			return tableInfo.next();
+			try(var connection = shard.getConnection())
+			{
+				var metaData = connection.getMetaData();
+				var tableInfo = metaData.getTables(null, null, tableName, null);
+				if(!tableInfo.next())
+				{
+					return false;
+				}
+			}
 		}
+		return true;
 	}
 	
 	public String toString()
@@ -394,6 +1067,25 @@ public class Table
 				generateIDFilterString());
 	}
 	
+	private List<String> getPrimaryKeyNames()
+	{
+		return Arrays.stream(primaryKeys).map(Column::getName).collect(Collectors.toList());
+	}
+	
+	private List<Column<?>> getUpsertColumns()
+	{
+		var columns = new LinkedList<Column<?>>(Arrays.asList(primaryKeys));
+		for(var column : getChangedColumns())
+		{
+			if(!column.isPrimaryKey())
+			{
+				columns.add(column);
+			}
+		}
+		
+		return columns;
+	}
+	
 	private boolean needsAutoGenerated()
 	{
 		return Arrays.stream(primaryKeys)
@@ -406,11 +1098,38 @@ public class Table
 	}
 	
 	private String generateTableString()
+	{
+		return generateTableString(tableName, currentColumns, primaryKeys, foreignKeys);
+	}
+	
+	/**
+	 * Renders the table, create and drop statements for the given columns
+	 * without registering them, for generating schemas ahead of time.
+	 */
+	static String[] generateSchemaStrings(String tableName, Column<?>... columns)
+	{
+		var primaryKeys = Arrays.stream(columns).filter(Column::isPrimaryKey).toArray(Column<?>[]::new);
+		var foreignKeys = new HashMap<String, List<ForeignKey<?>>>();
+		for(var column : columns)
+		{
+			if(column.isForeignKey())
+			{
+				var key = column.getForeignKey();
+				foreignKeys.computeIfAbsent(key.getTableReference().getName(), k -> new LinkedList<ForeignKey<?>>())
+						   .add(key);
+			}
+		}
+		
+		return generateTableStrings(tableName, generateTableString(tableName, columns, primaryKeys, foreignKeys));
+	}
+	
+	private static String generateTableString(String tableName, Column<?>[] columns, Column<?>[] primaryKeys, 
+		Map<String, List<ForeignKey<?>>> foreignKeys)
 	{
 		var tableString = String.format("%s (\n", tableName);
 		
 		tableString += String.join(",\n", 
-				Arrays.stream(currentColumns).map(Column::toString).toArray(String[]::new));
+				Arrays.stream(columns).map(Column::toString).toArray(String[]::new));
 		
 		if(primaryKeys.length != 0)
 		{
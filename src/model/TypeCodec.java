@@ -0,0 +1,20 @@
+package model;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Converts a column's values to and from JDBC with typed setters and getters.
+ * {@link #set} is only called with non-null values; null is bound with
+ * {@link PreparedStatement#setNull(int, int)} using the column's type.
+ */
+public interface TypeCodec<T>
+{
+	void set(PreparedStatement statement, int index, T value) throws SQLException;
+	
+	/**
+	 * Returns the value at the given index, or null if it is SQL NULL.
+	 */
+	T get(ResultSet results, int index) throws SQLException;
+}
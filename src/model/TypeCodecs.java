@@ -0,0 +1,397 @@
+package model;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The registry of {@link TypeCodec}s. A column's codec is chosen once, when it
+ * is built, by its JDBC type and, if known, its Java type; columns without a
+ * registered codec fall back to setObject/getObject.
+ */
+public final class TypeCodecs
+{
+	public static final TypeCodec<Object> OBJECT = new TypeCodec<Object>()
+	{
+		public void set(PreparedStatement statement, int index, Object value) throws SQLException
+		{
+			statement.setObject(index, value);
+		}
+		
+		public Object get(ResultSet results, int index) throws SQLException
+		{
+			return results.getObject(index);
+		}
+	};
+	
+	/**
+	 * Stores a UUID as its 16 big-endian bytes, for BINARY(16) columns.
+	 */
+	public static final TypeCodec<UUID> UUID_BINARY = new TypeCodec<UUID>()
+	{
+		public void set(PreparedStatement statement, int index, UUID value) throws SQLException
+		{
+			statement.setBytes(index, ByteBuffer.allocate(16)
+												.putLong(value.getMostSignificantBits())
+												.putLong(value.getLeastSignificantBits())
+												.array());
+		}
+		
+		public UUID get(ResultSet results, int index) throws SQLException
+		{
+			var bytes = results.getBytes(index);
+			if(bytes == null)
+			{
+				return null;
+			}
+			
+			var buffer = ByteBuffer.wrap(bytes);
+			return new UUID(buffer.getLong(), buffer.getLong());
+		}
+	};
+	
+	/**
+	 * Stores an Instant as milliseconds since the epoch, for BIGINT columns.
+	 */
+	public static final TypeCodec<Instant> INSTANT_EPOCH_MILLIS = new TypeCodec<Instant>()
+	{
+		public void set(PreparedStatement statement, int index, Instant value) throws SQLException
+		{
+			statement.setLong(index, value.toEpochMilli());
+		}
+		
+		public Instant get(ResultSet results, int index) throws SQLException
+		{
+			var millis = results.getLong(index);
+			return results.wasNull() ? null : Instant.ofEpochMilli(millis);
+		}
+	};
+	
+	private static final Map<Integer, TypeCodec<?>> byType = new ConcurrentHashMap<Integer, TypeCodec<?>>();
+	private static final Map<Integer, Map<Class<?>, TypeCodec<?>>> byJavaType = new ConcurrentHashMap<Integer, Map<Class<?>, TypeCodec<?>>>();
+	
+	static
+	{
+		var integer = new Typed(Number.class)
+		{
+			public void set(PreparedStatement statement, int index, Object value) throws SQLException
+			{
+				if(value instanceof Number)
+				{
+					statement.setInt(index, ((Number) value).intValue());
+				}
+				else
+				{
+					statement.setObject(index, value);
+				}
+			}
+			
+			public Object get(ResultSet results, int index) throws SQLException
+			{
+				var value = results.getInt(index);
+				return results.wasNull() ? null : value;
+			}
+		};
+		register(Types.TINYINT, integer);
+		register(Types.SMALLINT, integer);
+		register(Types.INTEGER, integer);
+		register(Types.REAL, new Typed(Number.class)
+		{
+			public void set(PreparedStatement statement, int index, Object value) throws SQLException
+			{
+				if(value instanceof Number)
+				{
+					statement.setFloat(index, ((Number) value).floatValue());
+				}
+				else
+				{
+					statement.setObject(index, value);
+				}
+			}
+			
+			public Object get(ResultSet results, int index) throws SQLException
+			{
+				var value = results.getFloat(index);
+				return results.wasNull() ? null : value;
+			}
+		});
+		var floating = new Typed(Number.class)
+		{
+			public void set(PreparedStatement statement, int index, Object value) throws SQLException
+			{
+				if(value instanceof Number)
+				{
+					statement.setDouble(index, ((Number) value).doubleValue());
+				}
+				else
+				{
+					statement.setObject(index, value);
+				}
+			}
+			
+			public Object get(ResultSet results, int index) throws SQLException
+			{
+				var value = results.getDouble(index);
+				return results.wasNull() ? null : value;
+			}
+		};
+		register(Types.FLOAT, floating);
+		register(Types.DOUBLE, floating);
+		var decimal = new Typed(BigDecimal.class)
+		{
+			public void set(PreparedStatement statement, int index, Object value) throws SQLException
+			{
+				if(value instanceof BigDecimal)
+				{
+					statement.setBigDecimal(index, (BigDecimal) value);
+				}
+				else
+				{
+					statement.setObject(index, value);
+				}
+			}
+			
+			public Object get(ResultSet results, int index) throws SQLException
+			{
+				return results.getBigDecimal(index);
+			}
+		};
+		register(Types.DECIMAL, decimal);
+		register(Types.NUMERIC, decimal);
+		register(Types.BOOLEAN, new Typed(Boolean.class)
+		{
+			public void set(PreparedStatement statement, int index, Object value) throws SQLException
+			{
+				if(value instanceof Boolean)
+				{
+					statement.setBoolean(index, (Boolean) value);
+				}
+				else
+				{
+					statement.setObject(index, value);
+				}
+			}
+			
+			public Object get(ResultSet results, int index) throws SQLException
+			{
+				var value = results.getBoolean(index);
+				return results.wasNull() ? null : value;
+			}
+		});
+		var string = new Typed(String.class)
+		{
+			public void set(PreparedStatement statement, int index, Object value) throws SQLException
+			{
+				if(value instanceof String)
+				{
+					statement.setString(index, (String) value);
+				}
+				else
+				{
+					statement.setObject(index, value);
+				}
+			}
+			
+			public Object get(ResultSet results, int index) throws SQLException
+			{
+				return results.getString(index);
+			}
+		};
+		register(Types.CHAR, string);
+		register(Types.VARCHAR, string);
+		register(Types.LONGVARCHAR, string);
+		register(Column.TEXT, string);
+		var bytes = new Typed(byte[].class)
+		{
+			public void set(PreparedStatement statement, int index, Object value) throws SQLException
+			{
+				if(value instanceof byte[])
+				{
+					statement.setBytes(index, (byte[]) value);
+				}
+				else
+				{
+					statement.setObject(index, value);
+				}
+			}
+			
+			public Object get(ResultSet results, int index) throws SQLException
+			{
+				return results.getBytes(index);
+			}
+		};
+		register(Types.BINARY, bytes);
+		register(Types.VARBINARY, bytes);
+		register(Types.DATE, new Typed(Date.class)
+		{
+			public void set(PreparedStatement statement, int index, Object value) throws SQLException
+			{
+				if(value instanceof Date)
+				{
+					statement.setDate(index, (Date) value);
+				}
+				else
+				{
+					statement.setObject(index, value);
+				}
+			}
+			
+			public Object get(ResultSet results, int index) throws SQLException
+			{
+				return results.getDate(index);
+			}
+		});
+		register(Types.TIME, new Typed(Time.class)
+		{
+			public void set(PreparedStatement statement, int index, Object value) throws SQLException
+			{
+				if(value instanceof Time)
+				{
+					statement.setTime(index, (Time) value);
+				}
+				else
+				{
+					statement.setObject(index, value);
+				}
+			}
+			
+			public Object get(ResultSet results, int index) throws SQLException
+			{
+				return results.getTime(index);
+			}
+		});
+		register(Types.TIMESTAMP, new Typed(Timestamp.class)
+		{
+			public void set(PreparedStatement statement, int index, Object value) throws SQLException
+			{
+				if(value instanceof Timestamp)
+				{
+					statement.setTimestamp(index, (Timestamp) value);
+				}
+				else
+				{
+					statement.setObject(index, value);
+				}
+			}
+			
+			public Object get(ResultSet results, int index) throws SQLException
+			{
+				return results.getTimestamp(index);
+			}
+		});
+		
+		// BIGINT may be unsigned and BIT may hold several bits, so columns of
+		// those types only read through getLong and getBoolean when they
+		// declare the matching Java type; otherwise getObject keeps the
+		// driver's BigInteger or byte[] values.
+		register(Types.BIGINT, Long.class, new Typed(Long.class)
+		{
+			public void set(PreparedStatement statement, int index, Object value) throws SQLException
+			{
+				if(value instanceof Long)
+				{
+					statement.setLong(index, (Long) value);
+				}
+				else
+				{
+					statement.setObject(index, value);
+				}
+			}
+			
+			public Object get(ResultSet results, int index) throws SQLException
+			{
+				var value = results.getLong(index);
+				return results.wasNull() ? null : value;
+			}
+		});
+		register(Types.BIT, Boolean.class, new Typed(Boolean.class)
+		{
+			public void set(PreparedStatement statement, int index, Object value) throws SQLException
+			{
+				if(value instanceof Boolean)
+				{
+					statement.setBoolean(index, (Boolean) value);
+				}
+				else
+				{
+					statement.setObject(index, value);
+				}
+			}
+			
+			public Object get(ResultSet results, int index) throws SQLException
+			{
+				var value = results.getBoolean(index);
+				return results.wasNull() ? null : value;
+			}
+		});
+		register(Types.BINARY, UUID.class, UUID_BINARY);
+		register(Types.BIGINT, Instant.class, INSTANT_EPOCH_MILLIS);
+	}
+	
+	private TypeCodecs()
+	{
+	}
+	
+	public static void register(int jdbcType, TypeCodec<?> codec)
+	{
+		byType.put(jdbcType, codec);
+	}
+	
+	public static void register(int jdbcType, Class<?> javaType, TypeCodec<?> codec)
+	{
+		byJavaType.computeIfAbsent(jdbcType, k -> new ConcurrentHashMap<Class<?>, TypeCodec<?>>()).put(javaType, codec);
+	}
+	
+	/**
+	 * Finds the codec for a column of the given JDBC type holding values of the
+	 * given Java type, which may be null when unknown.
+	 */
+	public static TypeCodec<?> forType(int jdbcType, Class<?> javaType)
+	{
+		if(javaType != null)
+		{
+			var codec = byJavaType.getOrDefault(jdbcType, Map.of()).get(javaType);
+			if(codec != null)
+			{
+				return codec;
+			}
+		}
+		
+		var codec = byType.getOrDefault(jdbcType, OBJECT);
+		if(javaType != null && codec instanceof Typed && !((Typed) codec).accepts(javaType))
+		{
+			return OBJECT;
+		}
+		return codec;
+	}
+	
+	/**
+	 * A built-in codec for values of one class. Each is its own class with
+	 * direct typed calls, and values of any other class, such as a Long bound
+	 * to a DATE column by hand, are bound with setObject.
+	 */
+	private abstract static class Typed implements TypeCodec<Object>
+	{
+		private final Class<?> valueType;
+		
+		public Typed(Class<?> valueType)
+		{
+			this.valueType = valueType;
+		}
+		
+		public boolean accepts(Class<?> javaType)
+		{
+			return javaType.isPrimitive() || valueType.isAssignableFrom(javaType);
+		}
+	}
+}
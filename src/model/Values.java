@@ -0,0 +1,89 @@
+package model;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+final class Values
+{
+	private Values()
+	{
+	}
+	
+	/**
+	 * Compares two column values, ordering nulls first and comparing numbers
+	 * by value regardless of their boxed type.
+	 */
+	@SuppressWarnings("unchecked")
+	static int compare(Object a, Object b)
+	{
+		if(a == b)
+		{
+			return 0;
+		}
+		if(a == null)
+		{
+			return -1;
+		}
+		if(b == null)
+		{
+			return 1;
+		}
+		if(a instanceof Number && b instanceof Number)
+		{
+			return compareNumbers((Number) a, (Number) b);
+		}
+		
+		return ((Comparable<Object>) a).compareTo(b);
+	}
+	
+	static boolean equal(Object a, Object b)
+	{
+		if(a == null || b == null)
+		{
+			return a == b;
+		}
+		if(a instanceof Number && b instanceof Number)
+		{
+			return compareNumbers((Number) a, (Number) b) == 0;
+		}
+		
+		return a.equals(b);
+	}
+	
+	static int hash(Object value)
+	{
+		if(value instanceof Number)
+		{
+			var number = (Number) value;
+			if(isIntegral(number))
+			{
+				return Long.hashCode(number.longValue());
+			}
+			var d = number.doubleValue();
+			return d == (long) d ? Long.hashCode((long) d) : Double.hashCode(d);
+		}
+		
+		return value == null ? 0 : value.hashCode();
+	}
+	
+	private static int compareNumbers(Number a, Number b)
+	{
+		if(isIntegral(a) && isIntegral(b))
+		{
+			return Long.compare(a.longValue(), b.longValue());
+		}
+		if(a instanceof BigDecimal || b instanceof BigDecimal
+		|| a instanceof BigInteger || b instanceof BigInteger)
+		{
+			return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString()));
+		}
+		
+		return Double.compare(a.doubleValue(), b.doubleValue());
+	}
+	
+	private static boolean isIntegral(Number number)
+	{
+		return number instanceof Integer || number instanceof Long
+			|| number instanceof Short || number instanceof Byte;
+	}
+}
@@ -0,0 +1,27 @@
+package model;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class Workers
+{
+	static final ExecutorService POOL = Executors.newCachedThreadPool(daemon("orm-worker"));
+	static final ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(1, daemon("orm-scheduler"));
+	
+	private Workers()
+	{
+	}
+	
+	private static ThreadFactory daemon(String prefix)
+	{
+		var counter = new AtomicInteger();
+		return runnable -> {
+			var thread = new Thread(runnable, String.format("%s-%d", prefix, counter.incrementAndGet()));
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
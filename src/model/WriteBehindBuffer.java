@@ -0,0 +1,381 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Queues row writes and upserts them to the database in JDBC batches on a
+ * schedule, coalescing repeated writes of the same primary key into one.
+ * Every queued write is first appended to a memory-mapped journal and forced
+ * to disk before enqueue returns, so writes not yet flushed survive a crash
+ * of the process or the machine and are replayed by {@link #recover()}.
+ * Records left by a previous process are kept in the journal until they
+ * have been recovered.
+ */
+public class WriteBehindBuffer implements AutoCloseable
+{
+	private static final System.Logger LOGGER = System.getLogger(WriteBehindBuffer.class.getName());
+	private static final int RECORD_HEADER = 2 * Integer.BYTES;
+	
+	private final Database database;
+	private final FileChannel channel;
+	private final MappedByteBuffer journal;
+	private final Map<String, Table> prototypes;
+	private final ReentrantLock flushLock;
+	private Map<Key, Table> pending;
+	private ScheduledFuture<?> flusher;
+	private int unrecovered;
+	private volatile Exception lastFailure;
+	private Consumer<Exception> onFailure;
+	
+	public WriteBehindBuffer(Database database, Path journalPath, int journalCapacity) throws IOException
+	{
+		this.database = Objects.requireNonNull(database);
+		prototypes = new ConcurrentHashMap<String, Table>();
+		flushLock = new ReentrantLock();
+		pending = new LinkedHashMap<Key, Table>();
+		
+		channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		journal = channel.map(FileChannel.MapMode.READ_WRITE, 0, journalCapacity);
+		
+		while(readRecord(journal) != null)
+		{
+		}
+		unrecovered = journal.position();
+	}
+	
+	/**
+	 * Registers the table a journal may contain rows of, so they can be
+	 * rebuilt on recovery. Tables are also registered by enqueue.
+	 */
+	public WriteBehindBuffer register(Table prototype)
+	{
+		prototypes.putIfAbsent(prototype.getName(), prototype);
+		return this;
+	}
+	
+	/**
+	 * Sets a callback given the exception whenever a scheduled flush fails.
+	 * Without one, failures are logged.
+	 */
+	public synchronized WriteBehindBuffer onFlushFailure(Consumer<Exception> onFailure)
+	{
+		this.onFailure = onFailure;
+		return this;
+	}
+	
+	/**
+	 * Returns the exception thrown by the last flush, or null if it succeeded.
+	 */
+	public Exception getLastFailure()
+	{
+		return lastFailure;
+	}
+	
+	public synchronized WriteBehindBuffer start(Duration flushInterval)
+	{
+		if(flusher == null)
+		{
+			flusher = Workers.SCHEDULER.scheduleWithFixedDelay(() -> {
+				try
+				{
+					flush();
+				}
+				catch(SQLException | RuntimeException e)
+				{
+					reportFailure(e);
+				}
+			}, flushInterval.toNanos(), flushInterval.toNanos(), TimeUnit.NANOSECONDS);
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Queues a snapshot of the row's current values. The row itself may keep
+	 * changing; later enqueues of the same primary key replace this one.
+	 */
+	public void enqueue(Table row) throws IOException, SQLException
+	{
+		if(row.getPrimaryKeys().length == 0 || Arrays.stream(row.getPrimaryKeys()).anyMatch(k -> k.getValue() == null))
+		{
+			throw new IllegalArgumentException("Write-behind rows need every primary key value");
+		}
+		
+		register(row);
+		var snapshot = detach(row);
+		var values = new Object[snapshot.getColumns().length + 1];
+		values[0] = snapshot.getName();
+		for(var i = 1; i < values.length; i++)
+		{
+			values[i] = snapshot.getColumns()[i - 1].getValue();
+		}
+		var payload = new RowCodec().encode(values);
+		
+		synchronized(this)
+		{
+			if(journal.remaining() >= RECORD_HEADER + payload.remaining())
+			{
+				append(payload, snapshot);
+				return;
+			}
+		}
+		
+		flush();
+		
+		synchronized(this)
+		{
+			if(journal.remaining() < RECORD_HEADER + payload.remaining())
+			{
+				throw new IOException("Write-behind journal is full");
+			}
+			append(payload, snapshot);
+		}
+	}
+	
+	public synchronized int getPendingCount()
+	{
+		return pending.size();
+	}
+	
+	/**
+	 * Upserts every queued row, then drops the flushed entries from the
+	 * journal. If the write fails, the rows stay queued for the next flush.
+	 */
+	public void flush() throws SQLException
+	{
+		flushLock.lock();
+		try
+		{
+			Map<Key, Table> batch;
+			int mark;
+			synchronized(this)
+			{
+				if(pending.isEmpty())
+				{
+					return;
+				}
+				batch = pending;
+				pending = new LinkedHashMap<Key, Table>();
+				mark = journal.position();
+			}
+			
+			try
+			{
+				Table.upsertAll(database, batch.values());
+			}
+			catch(SQLException | RuntimeException e)
+			{
+				synchronized(this)
+				{
+					for(var entry : batch.entrySet())
+					{
+						entry.getValue().markAllChanged();
+					}
+					batch.putAll(pending);
+					pending = batch;
+				}
+				lastFailure = e;
+				throw e;
+			}
+			
+			synchronized(this)
+			{
+				compact(mark);
+			}
+			lastFailure = null;
+		}
+		finally
+		{
+			flushLock.unlock();
+		}
+	}
+	
+	/**
+	 * Replays the writes left in the journal by a previous process and
+	 * flushes them. Returns the number of rows replayed.
+	 */
+	public int recover() throws IOException, SQLException
+	{
+		var replayed = 0;
+		synchronized(this)
+		{
+			var records = journal.duplicate();
+			records.position(0);
+			ByteBuffer payload;
+			while(records.position() < unrecovered && (payload = readRecord(records)) != null)
+			{
+				var tableName = (String) RowCodec.decode(payload, 1)[0];
+				var prototype = prototypes.get(tableName);
+				if(prototype == null)
+				{
+					throw new IllegalStateException(String.format("Table %s must be registered before recovery", tableName));
+				}
+				
+				var values = RowCodec.decode(payload, prototype.getColumns().length);
+				var columns = Arrays.stream(prototype.getColumns()).map(c -> c.cloneWithValue(null)).toArray(Column[]::new);
+				var row = new Table(tableName, columns);
+				for(var i = 0; i < columns.length; i++)
+				{
+					columns[i].setValue(values[i]);
+				}
+				row.markAllChanged();
+				
+				pending.put(key(row), row);
+				replayed++;
+			}
+			unrecovered = 0;
+		}
+		
+		flush();
+		return replayed;
+	}
+	
+	@Override
+	public void close() throws IOException, SQLException
+	{
+		synchronized(this)
+		{
+			if(flusher != null)
+			{
+				flusher.cancel(false);
+				flusher = null;
+			}
+		}
+		
+		flush();
+		journal.force();
+		channel.close();
+	}
+	
+	private void append(ByteBuffer payload, Table row)
+	{
+		var crc = new CRC32();
+		crc.update(payload.duplicate());
+		
+		journal.putInt(payload.remaining());
+		journal.putInt((int) crc.getValue());
+		journal.put(payload);
+		terminate();
+		journal.force();
+		
+		pending.put(key(row), row);
+	}
+	
+	/**
+	 * Drops the records before mark, except any left by a previous process
+	 * that have not been recovered yet.
+	 */
+	private void compact(int mark)
+	{
+		var tail = journal.duplicate();
+		tail.position(mark);
+		tail.limit(journal.position());
+		
+		journal.position(unrecovered);
+		journal.put(tail);
+		terminate();
+		journal.force();
+	}
+	
+	private void reportFailure(Exception e)
+	{
+		Consumer<Exception> callback;
+		synchronized(this)
+		{
+			callback = onFailure;
+		}
+		
+		if(callback != null)
+		{
+			callback.accept(e);
+		}
+		else
+		{
+			LOGGER.log(System.Logger.Level.WARNING, "Write-behind flush failed; rows stay queued", e);
+		}
+	}
+	
+	private void terminate()
+	{
+		if(journal.remaining() >= Integer.BYTES)
+		{
+			journal.putInt(journal.position(), 0);
+		}
+	}
+	
+	/**
+	 * Reads the record at the buffer's position, advancing past it, or returns
+	 * null at the end of the journal or at a torn or corrupt record.
+	 */
+	private static ByteBuffer readRecord(ByteBuffer buffer)
+	{
+		if(buffer.remaining() < RECORD_HEADER)
+		{
+			return null;
+		}
+		
+		var start = buffer.position();
+		var length = buffer.getInt();
+		var checksum = buffer.getInt();
+		if(length <= 0 || length > buffer.remaining())
+		{
+			buffer.position(start);
+			return null;
+		}
+		
+		var payload = buffer.slice();
+		payload.limit(length);
+		var crc = new CRC32();
+		crc.update(payload.duplicate());
+		if((int) crc.getValue() != checksum)
+		{
+			buffer.position(start);
+			return null;
+		}
+		
+		buffer.position(buffer.position() + length);
+		return payload;
+	}
+	
+	private static Table detach(Table row)
+	{
+		var columns = new Column<?>[row.getColumns().length];
+		for(var i = 0; i < columns.length; i++)
+		{
+			var column = row.getColumns()[i];
+			columns[i] = column.cloneWithValue(row.getColumnValue(column.getName()));
+		}
+		
+		var snapshot = new Table(row.getName(), columns);
+		snapshot.markAllChanged();
+		return snapshot;
+	}
+	
+	private static Key key(Table row)
+	{
+		var values = new Object[row.getPrimaryKeys().length + 1];
+		values[0] = row.getName();
+		for(var i = 1; i < values.length; i++)
+		{
+			values[i] = row.getPrimaryKeys()[i - 1].getValue();
+		}
+		return new Key(values);
+	}
+}